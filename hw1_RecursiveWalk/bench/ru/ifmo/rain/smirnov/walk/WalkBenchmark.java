@@ -0,0 +1,198 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ru.ifmo.rain.krivopaltsev.walk.FNVHash;
+
+/**
+ * Throughput benchmark for file hashing and whole walks over generated trees.
+ * <p>
+ * Usage: {@code WalkBenchmark [<work directory> [<scale>]]}. Scale multiplies the number and size
+ * of generated files. The trees are generated in a new subdirectory of the work directory,
+ * which is removed when the benchmark ends. The benchmark lives in its own source root and is
+ * not part of the walk itself.
+ */
+public class WalkBenchmark {
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 5;
+    private static final int[] BUFFER_SIZES = {4 << 10, 64 << 10, 1 << 20};
+    private static final Random RANDOM = new Random(2019);
+
+    private static volatile long sink;
+
+    private final Path root;
+    private final int scale;
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private WalkBenchmark(Path root, int scale) {
+        this.root = root;
+        this.scale = scale;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // A fresh directory even within the given one, so that only generated files get deleted
+        Path dir = args.length > 0
+                ? Files.createTempDirectory(Files.createDirectories(Paths.get(args[0])), "walk-bench")
+                : Files.createTempDirectory("walk-bench");
+        int scale = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        try {
+            new WalkBenchmark(dir, scale).run();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private void run() throws Exception {
+        Map<String, Path> trees = new LinkedHashMap<>();
+        trees.put("tiny", generate("tiny", 1, 10_000 * scale, 100));
+        trees.put("huge", generate("huge", 1, 2, 128L * scale << 20));
+        trees.put("deep", generateDeep("deep", 64, 20 * scale, 4096));
+        trees.put("wide", generate("wide", 100, 100 * scale, 4096));
+
+        for (Map.Entry<String, Path> tree : trees.entrySet()) {
+            List<Path> files = list(tree.getValue());
+            long bytes = size(files);
+            for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+                for (int bufferSize : BUFFER_SIZES) {
+                    measure(String.format("%s/%s/stream-%dK", tree.getKey(), algorithm.getName(), bufferSize >> 10), bytes,
+                            () -> hashAll(files, algorithm, bufferSize, Long.MAX_VALUE));
+                }
+                measure(String.format("%s/%s/mapped", tree.getKey(), algorithm.getName()), bytes,
+                        () -> hashAll(files, algorithm, 0, 0));
+            }
+            for (int bufferSize : BUFFER_SIZES) {
+                measure(String.format("%s/krivopaltsev-fnv32/stream-%dK", tree.getKey(), bufferSize >> 10), bytes,
+                        () -> hashAll(files, bufferSize));
+            }
+
+            Path input = root.resolve(tree.getKey() + ".in");
+            Path output = root.resolve(tree.getKey() + ".out");
+            Files.write(input, Collections.singletonList(tree.getValue().toString()), StandardCharsets.UTF_8);
+            String[] walk = {input.toString(), output.toString()};
+            measure(tree.getKey() + "/walk", bytes, () -> RecursiveWalk.main(walk));
+            String threads = Integer.toString(Runtime.getRuntime().availableProcessors());
+            measure(tree.getKey() + "/walk-threads-" + threads, bytes,
+                    () -> RecursiveWalk.main(new String[]{"--threads", threads, input.toString(), output.toString()}));
+            measure(tree.getKey() + "/walk-walkers-" + threads, bytes,
+                    () -> RecursiveWalk.main(new String[]{"--walkers", threads, input.toString(), output.toString()}));
+            measure(tree.getKey() + "/krivopaltsev-walk", bytes,
+                    () -> ru.ifmo.rain.krivopaltsev.walk.RecursiveWalk.main(walk));
+        }
+    }
+
+    private static void hashAll(List<Path> files, HashAlgorithm algorithm, int bufferSize, long mapThreshold) throws IOException {
+        long result = 0;
+        for (Path file : files) {
+            result += RecursiveFileVisitor.hashFile(file, algorithm, bufferSize, mapThreshold)[0];
+        }
+        sink += result;
+    }
+
+    /**
+     * Hashes the files with {@link FNVHash#hash32(byte[], int)}, the hash of the krivopaltsev walk.
+     */
+    private static void hashAll(List<Path> files, int bufferSize) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        long result = 0;
+        for (Path file : files) {
+            FNVHash hash = new FNVHash();
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    hash.hash32(buffer, read);
+                }
+            }
+            result += hash.getHash();
+        }
+        sink += result;
+    }
+
+    private static void measure(String name, long bytes, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        double median = times[ITERATIONS / 2] / 1e6;
+        System.out.println(String.format("%-40s %10.2f ms %10.1f MB/s (min %.2f ms, max %.2f ms)",
+                name, median, bytes / 1e3 / median, times[0] / 1e6, times[ITERATIONS - 1] / 1e6));
+    }
+
+    private Path generate(String name, int dirs, int filesPerDir, long fileSize) throws IOException {
+        Path tree = root.resolve(name);
+        for (int i = 0; i < dirs; i++) {
+            Path dir = tree.resolve("d" + i);
+            Files.createDirectories(dir);
+            createFiles(dir, filesPerDir, fileSize);
+        }
+        return tree;
+    }
+
+    private Path generateDeep(String name, int depth, int filesPerDir, long fileSize) throws IOException {
+        Path tree = root.resolve(name);
+        Path dir = tree;
+        for (int i = 0; i < depth; i++) {
+            dir = dir.resolve("d" + i);
+            Files.createDirectories(dir);
+            createFiles(dir, filesPerDir, fileSize);
+        }
+        return tree;
+    }
+
+    private static void createFiles(Path dir, int count, long size) throws IOException {
+        byte[] chunk = new byte[(int) Math.min(size, 1 << 20)];
+        for (int i = 0; i < count; i++) {
+            try (OutputStream out = Files.newOutputStream(dir.resolve("f" + i))) {
+                for (long written = 0; written < size; written += chunk.length) {
+                    RANDOM.nextBytes(chunk);
+                    out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+                }
+            }
+        }
+    }
+
+    private static List<Path> list(Path tree) throws IOException {
+        try (Stream<Path> stream = Files.walk(tree)) {
+            return stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    private static long size(List<Path> files) throws IOException {
+        long size = 0;
+        for (Path file : files) {
+            size += Files.size(file);
+        }
+        return size;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(dir)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ru.ifmo.rain.krivopaltsev.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Hashes many files at once through {@link AsynchronousFileChannel}. Every file in flight
+ * holds one pooled direct buffer, so the pool size bounds the bytes being read.
+ */
+public class AsyncHasher implements AutoCloseable {
+    private static final int CHUNK_SIZE = 1 << 18;
+
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final ExecutorService executor;
+
+    public AsyncHasher(long budget) {
+        int count = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget / CHUNK_SIZE));
+        buffers = new ArrayBlockingQueue<>(count);
+        for (int i = 0; i < count; i++) {
+            buffers.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+        }
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Starts hashing, blocking while the in-flight budget is exhausted.
+     */
+    public CompletableFuture<Integer> hash(Path path) throws IOException, InterruptedException {
+        ByteBuffer buffer = buffers.take();
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(path, Collections.singleton(StandardOpenOption.READ), executor);
+        } catch (IOException | RuntimeException e) {
+            buffers.add(buffer);
+            throw e;
+        }
+        FileRead read = new FileRead(channel, buffer);
+        read.next();
+        return read.result;
+    }
+
+    private class FileRead implements CompletionHandler<Integer, Void> {
+        private final AsynchronousFileChannel channel;
+        private final ByteBuffer buffer;
+        private final FNVHash hash = new FNVHash();
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private long position;
+
+        FileRead(AsynchronousFileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void next() {
+            buffer.clear();
+            try {
+                channel.read(buffer, position, null, this);
+            } catch (RuntimeException e) {
+                failed(e, null);
+            }
+        }
+
+        @Override
+        public void completed(Integer count, Void attachment) {
+            if (count < 0) {
+                finish();
+                result.complete(hash.getHash());
+                return;
+            }
+            buffer.flip();
+            hash.hash32(buffer);
+            position += count;
+            next();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            finish();
+            result.completeExceptionally(exc);
+        }
+
+        private void finish() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            buffers.add(buffer);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -1,21 +1,34 @@
 package ru.ifmo.rain.krivopaltsev.walk;
 
+import java.nio.ByteBuffer;
+
+/**
+ * 32-bit FNV-1, the only hash of this walk: its output lines, {@link HashCache} and
+ * {@link AsyncHasher} all carry the hash as an {@code int}. Selectable algorithms through
+ * {@code --hash} are a feature of the smirnov walk, which this solution does not share code with.
+ */
 public class FNVHash {
     private static final int FNV_32_INIT = 0x811c9dc5;
     private static final int FNV_32_PRIME = 0x01000193;
     private int res;
 
-    FNVHash() {
+    public FNVHash() {
         res = FNV_32_INIT;
     }
 
-    void hash32(final byte[] k, final int size) {
+    public void hash32(final byte[] k, final int size) {
         for (int i = 0; i < size; i++) {
             res = (res * FNV_32_PRIME) ^ (k[i] & 0xff);
         }
     }
 
-    int getHash() {
+    public void hash32(final ByteBuffer k) {
+        while (k.hasRemaining()) {
+            res = (res * FNV_32_PRIME) ^ (k.get() & 0xff);
+        }
+    }
+
+    public int getHash() {
         return res;
     }
 }
@@ -0,0 +1,143 @@
+package ru.ifmo.rain.krivopaltsev.walk;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class HashCache {
+    private static final int MAGIC = 0x464e5643;
+    private static final int VERSION = 1;
+    private static final long RACY_INTERVAL = TimeUnit.SECONDS.toNanos(2);
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> touched = new HashSet<>();
+    private final long startTime = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+    private static class Entry {
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+        private final int hash;
+
+        Entry(long size, long modified, String fileKey, int hash) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.hash = hash;
+        }
+
+        Entry(BasicFileAttributes attrs, int hash) {
+            this(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    attrs.fileKey() == null ? "" : attrs.fileKey().toString(), hash);
+        }
+
+        boolean matches(Entry other) {
+            return size == other.size && modified == other.modified && fileKey.equals(other.fileKey);
+        }
+    }
+
+    public HashCache(Path file) {
+        this.file = file;
+    }
+
+    public void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.out.println("Cache file has unknown format, ignoring: " + file);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                entries.put(path, new Entry(in.readLong(), in.readLong(), in.readUTF(), in.readInt()));
+            }
+        } catch (NoSuchFileException e) {
+            // First run, cache will be created on save
+        } catch (IOException | SecurityException e) {
+            entries.clear();
+            System.out.println("Cache file cannot be read, ignoring: " + file);
+        }
+    }
+
+    /**
+     * Entries not looked up in this run are kept only while their file exists,
+     * so that deleted and renamed files do not stay in the cache forever.
+     */
+    public void save() {
+        prune();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.modified);
+                    out.writeUTF(entry.fileKey);
+                    out.writeInt(entry.hash);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | SecurityException e) {
+            System.out.println("Cache file cannot be written: " + file);
+        }
+    }
+
+    private void prune() {
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+            String path = it.next();
+            if (!touched.contains(path) && !exists(path)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean exists(String path) {
+        try {
+            return Files.exists(Paths.get(path));
+        } catch (InvalidPathException | SecurityException e) {
+            return false;
+        }
+    }
+
+    Integer get(Path path, BasicFileAttributes attrs) {
+        String key = key(path);
+        touched.add(key);
+        Entry entry = entries.get(key);
+        return entry != null && entry.matches(new Entry(attrs, 0)) ? entry.hash : null;
+    }
+
+    /**
+     * Files modified right before the scan are not cached: a later change within
+     * the same timestamp granularity would keep both size and mtime.
+     */
+    void put(Path path, BasicFileAttributes attrs, int hash) {
+        Entry entry = new Entry(attrs, hash);
+        String key = key(path);
+        touched.add(key);
+        if (startTime - entry.modified > RACY_INTERVAL) {
+            entries.put(key, entry);
+        } else {
+            entries.remove(key);
+        }
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+}
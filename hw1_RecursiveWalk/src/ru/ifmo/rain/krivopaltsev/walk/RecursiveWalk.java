@@ -2,21 +2,74 @@ package ru.ifmo.rain.krivopaltsev.walk;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
 
 public class RecursiveWalk extends Walk {
+    private final int walkers;
+    private ForkJoinPool pool;
 
     public RecursiveWalk(String input, String output) {
-        super(input, output);
+        this(input, output, null);
+    }
+
+    public RecursiveWalk(String input, String output, String cache) {
+        this(input, output, cache, 0);
+    }
+
+    public RecursiveWalk(String input, String output, String cache, long asyncBudget) {
+        this(input, output, cache, asyncBudget, 0);
+    }
+
+    /**
+     * @param walkers number of threads listing directories ahead of hashing, {@code 0} to walk sequentially
+     */
+    public RecursiveWalk(String input, String output, String cache, long asyncBudget, int walkers) {
+        super(input, output, cache, asyncBudget);
+        this.walkers = walkers;
+    }
+
+    @Override
+    protected boolean walksDirectories() {
+        return true;
+    }
+
+    @Override
+    public void start() {
+        if (walkers > 0) {
+            pool = new ForkJoinPool(walkers);
+        }
+        try {
+            super.start();
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+                pool = null;
+            }
+        }
     }
 
     @Override
     protected void calculateHash(Path path, Writer writer) {
         try {
+            if (pool != null) {
+                DirectoryTask.walk(pool, path, this, writer);
+                return;
+            }
             Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
@@ -35,14 +88,162 @@ public class RecursiveWalk extends Walk {
         } catch (SecurityException e) {
             System.out.println("Access to directory: " + path + " is denied");
         }
+    }
+
+    private static boolean isDirectory(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+    }
+
+    /**
+     * Marks an entry that {@link Files#walkFileTree} would pass to {@code visitFileFailed}.
+     */
+    private static class Failed {
+        private final Path path;
+
+        Failed(Path path) {
+            this.path = path;
+        }
+    }
+
+    private static class Listing {
+        /**
+         * Files, failed entries and subdirectory tasks in listing order.
+         */
+        private final List<Object> entries = new ArrayList<>();
+        private RuntimeException error;
+    }
+
+    /**
+     * Lists a single directory. Subdirectories are listed in parallel, at most {@value #AHEAD} ahead
+     * of the walk, and {@link #walk} hashes every file as soon as the directories before it are listed,
+     * in the order {@link Files#walkFileTree} would visit them.
+     */
+    private static class DirectoryTask extends RecursiveTask<Listing> {
+        private static final long serialVersionUID = 1L;
+        private static final int AHEAD = 1 << 12;
+
+        private final Path dir;
+        private final Semaphore ahead;
+        private boolean forked;
+
+        DirectoryTask(Path dir, Semaphore ahead) {
+            this.dir = dir;
+            this.ahead = ahead;
+        }
+
+        static void walk(ForkJoinPool pool, Path root, RecursiveWalk walk, Writer writer) throws IOException {
+            try {
+                if (!isDirectory(root)) {
+                    walk.calculateHashFile(root, writer);
+                    return;
+                }
+            } catch (IOException e) {
+                walk.writeLine(writer, 0, root.toString());
+                return;
+            }
+            Semaphore ahead = new Semaphore(AHEAD);
+            Deque<Listing> listings = new ArrayDeque<>();
+            Deque<Iterator<Object>> positions = new ArrayDeque<>();
+            Listing first = pool.invoke(new DirectoryTask(root, ahead));
+            listings.push(first);
+            positions.push(first.entries.iterator());
+            try {
+                while (!positions.isEmpty()) {
+                    Iterator<Object> position = positions.peek();
+                    if (position.hasNext()) {
+                        Object entry = position.next();
+                        if (entry instanceof DirectoryTask) {
+                            Listing listing = ((DirectoryTask) entry).listing(pool);
+                            listings.push(listing);
+                            positions.push(listing.entries.iterator());
+                        } else if (entry instanceof Failed) {
+                            walk.writeLine(writer, 0, ((Failed) entry).path.toString());
+                        } else {
+                            walk.calculateHashFile((Path) entry, writer);
+                        }
+                    } else {
+                        positions.pop();
+                        Listing listing = listings.pop();
+                        if (listing.error instanceof DirectoryIteratorException) {
+                            throw ((DirectoryIteratorException) listing.error).getCause();
+                        } else if (listing.error != null) {
+                            throw listing.error;
+                        }
+                    }
+                }
+            } finally {
+                for (Iterator<Object> position : positions) {
+                    position.forEachRemaining(entry -> {
+                        if (entry instanceof DirectoryTask) {
+                            ((DirectoryTask) entry).cancel(false);
+                        }
+                    });
+                }
+            }
+        }
 
+        private Listing listing(ForkJoinPool pool) {
+            if (!forked) {
+                return pool.invoke(this);
+            }
+            try {
+                return join();
+            } finally {
+                ahead.release();
+            }
+        }
+
+        @Override
+        protected Listing compute() {
+            Listing listing = new Listing();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    try {
+                        if (isDirectory(entry)) {
+                            DirectoryTask task = new DirectoryTask(entry, ahead);
+                            if (ahead.tryAcquire()) {
+                                task.forked = true;
+                                task.fork();
+                            }
+                            listing.entries.add(task);
+                        } else {
+                            listing.entries.add(entry);
+                        }
+                    } catch (IOException e) {
+                        listing.entries.add(new Failed(entry));
+                    }
+                }
+            } catch (IOException e) {
+                if (listing.entries.isEmpty()) {
+                    listing.entries.add(new Failed(dir));
+                }
+            } catch (DirectoryIteratorException | SecurityException e) {
+                listing.error = e;
+            }
+            return listing;
+        }
+    }
+
+    private static int walkers(String[] args) {
+        if (args.length < 5)
+            return 0;
+        try {
+            return Integer.parseInt(args[4]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     public static void main(String[] args) {
-        if (!validateArgs(args) || createDirectories(args[1])) {
+        if (!validateArgs(args, true) || !createDirectories(args[1])) {
+            return;
+        }
+        int walkers = walkers(args);
+        if (walkers < 0) {
+            System.out.println("Number of walkers should be a non-negative number");
             return;
         }
-        RecursiveWalk walk = new RecursiveWalk(args[0], args[1]);
+        RecursiveWalk walk = new RecursiveWalk(args[0], args[1], cacheArg(args), asyncBudget(args), walkers);
         walk.start();
     }
 }
@@ -5,10 +5,49 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Walk {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int MAX_PENDING = 1 << 12;
+    /**
+     * System property with the period in seconds of the progress line printed to stderr.
+     */
+    private static final String PROGRESS_PROPERTY = "walk.progress";
+    private final char[] hashBuffer = new char[8];
     private Path input;
     private Path output;
+    private HashCache cache;
+    private final Map<Object, Integer> hashed = new HashMap<>();
+    private boolean shareHashes;
+    private boolean linkCountSupported = true;
+    private long asyncBudget;
+    private AsyncHasher asyncHasher;
+    private final Deque<PendingLine> pending = new ArrayDeque<>();
+    private final WalkMetrics metrics = new WalkMetrics();
+
+    private static class PendingLine {
+        private final Writer writer;
+        private final String name;
+        private final Path path;
+        private final BasicFileAttributes attrs;
+        private final Object key;
+        private final CompletableFuture<Integer> hash;
+
+        PendingLine(Writer writer, String name, Path path, BasicFileAttributes attrs, Object key, CompletableFuture<Integer> hash) {
+            this.writer = writer;
+            this.name = name;
+            this.path = path;
+            this.attrs = attrs;
+            this.key = key;
+            this.hash = hash;
+        }
+    }
 
     public Walk(String inputStr, String outputStr) {
         try {
@@ -23,18 +62,48 @@ public class Walk {
         }
     }
 
+    public Walk(String inputStr, String outputStr, String cacheStr) {
+        this(inputStr, outputStr);
+        if (cacheStr != null) {
+            try {
+                this.cache = new HashCache(Paths.get(cacheStr));
+            } catch (InvalidPathException e) {
+                System.out.println("Incorrect cache file: " + cacheStr);
+            }
+        }
+    }
+
+    public Walk(String inputStr, String outputStr, String cacheStr, long asyncBudget) {
+        this(inputStr, outputStr, cacheStr);
+        this.asyncBudget = asyncBudget;
+    }
+
     public void start() {
         if (input == null || output == null)
             return;
+        if (cache != null)
+            cache.load();
+        metrics.register(getClass());
+        int progress = Integer.getInteger(PROGRESS_PROPERTY, 0);
+        if (progress > 0)
+            metrics.startReporting(progress);
         try (BufferedReader reader = Files.newBufferedReader(input)) {
+            List<String> filenames = new ArrayList<>();
+            String filename;
+            while ((filename = reader.readLine()) != null) {
+                filenames.add(filename);
+            }
             try (BufferedWriter writer = Files.newBufferedWriter(output)) {
-                String filename;
-                while ((filename = reader.readLine()) != null) {
-                    try {
-                        calculateHash(Paths.get(filename), writer);
-                    } catch (InvalidPathException e) {
-                        writeLine(writer, 0, filename);
+                if (asyncBudget > 0) {
+                    try (AsyncHasher hasher = new AsyncHasher(asyncBudget)) {
+                        asyncHasher = hasher;
+                        walkAll(filenames, writer);
+                        writePending(true);
+                    } finally {
+                        asyncHasher = null;
                     }
+                } else {
+                    walkAll(filenames, writer);
                 }
             } catch (IOException e) {
                 System.out.println("Output file is not existed");
@@ -46,18 +115,280 @@ public class Walk {
         } catch (SecurityException e) {
             System.out.println("Access to input file is denied");
         }
+        if (cache != null)
+            cache.save();
+        metrics.close();
     }
 
+    /**
+     * Plans all roots up front. A root that is the same file as an earlier one (by real path or
+     * {@code fileKey}) replays the earlier output, and a root inside an earlier root replays the
+     * part of its output under it; outputs are kept only for such later roots. Hashes are shared
+     * by {@code fileKey} only while walking a root that a later root contains, and for files
+     * with several hard links, so the run does not remember every file it hashes.
+     */
+    private void walkAll(List<String> filenames, Writer writer) throws IOException {
+        int n = filenames.size();
+        Path[] paths = new Path[n];
+        Path[] realPaths = new Path[n];
+        Object[] keys = new Object[n];
+        Map<Object, Integer> firstByKey = new HashMap<>();
+        Map<Path, Integer> firstByPath = new HashMap<>();
+        Map<Path, Integer> lastByPath = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            try {
+                paths[i] = Paths.get(filenames.get(i));
+                // A link given as a root is hashed, not walked, so it shares output with nothing
+                if (walksDirectories() && Files.isSymbolicLink(paths[i]))
+                    continue;
+                realPaths[i] = paths[i].toRealPath();
+                keys[i] = fileKey(realPaths[i], Files.readAttributes(realPaths[i], BasicFileAttributes.class));
+                firstByKey.putIfAbsent(keys[i], i);
+                firstByPath.putIfAbsent(realPaths[i], i);
+                lastByPath.put(realPaths[i], i);
+            } catch (InvalidPathException | IOException | SecurityException ignored) {
+                keys[i] = null;
+            }
+        }
 
+        int[] source = new int[n];
+        boolean[] keep = new boolean[n];
+        boolean[] shared = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            source[i] = -1;
+            if (keys[i] == null) {
+                continue;
+            }
+            int same = firstByKey.get(keys[i]);
+            if (same < i) {
+                source[i] = same;
+                keep[same] = true;
+                continue;
+            }
+            if (!walksDirectories()) {
+                continue;
+            }
+            for (Path parent = realPaths[i].getParent(); parent != null; parent = parent.getParent()) {
+                Integer first = firstByPath.get(parent);
+                if (first == null) {
+                    continue;
+                }
+                if (first < i && source[i] < 0) {
+                    source[i] = first;
+                    keep[first] = true;
+                }
+                if (lastByPath.get(parent) > i) {
+                    shared[i] = true;
+                }
+            }
+        }
+
+        String[] results = new String[n];
+        for (int i = 0; i < n; i++) {
+            if (paths[i] == null) {
+                writeLine(writer, 0, filenames.get(i));
+                continue;
+            }
+            Writer target = keep[i] ? new StringWriter() : writer;
+            if (source[i] >= 0) {
+                int from = source[i];
+                writePending(true);
+                Path root = realPaths[i].startsWith(realPaths[from])
+                        ? paths[from].resolve(realPaths[from].relativize(realPaths[i]))
+                        : paths[from];
+                replay(results[from], root.toString(), paths[i].toString(), target);
+            } else {
+                shareHashes = shared[i];
+                calculateHash(paths[i], target);
+                shareHashes = false;
+                if (keep[i]) {
+                    writePending(true);
+                }
+            }
+            if (keep[i]) {
+                results[i] = target.toString();
+                writer.write(results[i]);
+            }
+        }
+    }
+
+    /**
+     * Whether roots are walked into, so that a root inside another one is a part of its output.
+     */
+    protected boolean walksDirectories() {
+        return false;
+    }
+
+    /**
+     * Writes lines of the result for the file {@code from} and files under it, renamed to be under {@code to}.
+     */
+    private static void replay(String result, String from, String to, Writer writer) throws IOException {
+        if (result.isEmpty())
+            return;
+        for (String line : result.split(LINE_SEPARATOR)) {
+            int nameStart = line.indexOf(' ') + 1;
+            int nameEnd = nameStart + from.length();
+            if (line.startsWith(from, nameStart)
+                    && (line.length() == nameEnd || line.startsWith(File.separator, nameEnd))) {
+                writer.write(line, 0, nameStart);
+                writer.write(to);
+                writer.write(line, nameEnd, line.length() - nameEnd);
+                writer.write(LINE_SEPARATOR);
+            }
+        }
+    }
+
+    /**
+     * Writes the line, or queues it behind asynchronous results to keep the order.
+     */
     protected void writeLine(Writer writer, int hash, String name) {
+        if (pending.isEmpty()) {
+            writeLineNow(writer, hash, name);
+        } else {
+            pending.add(new PendingLine(writer, name, null, null, null, CompletableFuture.completedFuture(hash)));
+            writePending(false);
+        }
+    }
+
+    private void writeLineNow(Writer writer, int hash, String name) {
         try {
-            writer.write(String.format("%08x %s%s", hash, name, System.lineSeparator()));
+            for (int i = hashBuffer.length - 1; i >= 0; i--, hash >>>= 4) {
+                hashBuffer[i] = HEX_DIGITS[hash & 0xf];
+            }
+            writer.write(hashBuffer);
+            writer.write(' ');
+            writer.write(name);
+            writer.write(LINE_SEPARATOR);
         } catch (IOException e) {
             System.out.println("Error: writing hash of file: " + name);
         }
     }
 
     protected void calculateHashFile(Path path, Writer writer) {
+        if (asyncHasher != null) {
+            calculateHashFileAsync(path, writer);
+            return;
+        }
+        metrics.fileStarted(path);
+        try {
+            writeLine(writer, hashFile(path), path.toString());
+        } catch (IOException | SecurityException e) {
+            metrics.fileFailed();
+            writeLine(writer,0, path.toString());
+        }
+    }
+
+    private void calculateHashFileAsync(Path path, Writer writer) {
+        metrics.fileStarted(path);
+        long start = System.nanoTime();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            Object key = fileKey(path, attrs);
+            Integer known = knownHash(path, attrs, key);
+            key = keptKey(path, key);
+            CompletableFuture<Integer> hash;
+            if (known != null) {
+                metrics.fileCached(attrs.size());
+                hash = CompletableFuture.completedFuture(known);
+            } else {
+                hash = asyncHasher.hash(path);
+                hash.whenComplete((result, e) -> {
+                    if (e == null) {
+                        metrics.fileHashed(attrs.size(), System.nanoTime() - start);
+                    } else {
+                        metrics.fileFailed();
+                    }
+                });
+            }
+            pending.add(new PendingLine(writer, path.toString(), path, attrs, key, hash));
+        } catch (IOException | SecurityException e) {
+            metrics.fileFailed();
+            writeLine(writer, 0, path.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.fileFailed();
+            writeLine(writer, 0, path.toString());
+        }
+        writePending(false);
+    }
+
+    /**
+     * Writes the finished lines at the head of the queue. Waits for the head while more than
+     * {@value #MAX_PENDING} lines are queued, so results finished behind a slow file do not pile up.
+     */
+    private void writePending(boolean wait) {
+        while (!pending.isEmpty() && (wait || pending.size() > MAX_PENDING || pending.peek().hash.isDone())) {
+            PendingLine line = pending.poll();
+            int hash;
+            try {
+                hash = line.hash.join();
+                if (line.attrs != null)
+                    storeHash(line.path, line.attrs, line.key, hash);
+            } catch (CompletionException | CancellationException e) {
+                hash = 0;
+            }
+            writeLineNow(line.writer, hash, line.name);
+        }
+    }
+
+    /**
+     * Each physical file is read once per run: files under roots contained in later roots
+     * and hard links reuse the hash found by its {@code fileKey}.
+     */
+    private int hashFile(Path path) throws IOException {
+        long start = System.nanoTime();
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        Object key = fileKey(path, attrs);
+        Integer hash = knownHash(path, attrs, key);
+        if (hash == null) {
+            hash = readHash(path);
+            metrics.fileHashed(attrs.size(), System.nanoTime() - start);
+        } else {
+            metrics.fileCached(attrs.size());
+        }
+        storeHash(path, attrs, keptKey(path, key), hash);
+        return hash;
+    }
+
+    private static Object fileKey(Path path, BasicFileAttributes attrs) throws IOException {
+        return attrs.fileKey() != null ? attrs.fileKey() : path.toRealPath();
+    }
+
+    private Integer knownHash(Path path, BasicFileAttributes attrs, Object key) {
+        Integer hash = hashed.get(key);
+        if (hash == null && cache != null)
+            hash = cache.get(path, attrs);
+        return hash;
+    }
+
+    private void storeHash(Path path, BasicFileAttributes attrs, Object key, int hash) {
+        if (cache != null)
+            cache.put(path, attrs, hash);
+        if (key != null)
+            hashed.put(key, hash);
+    }
+
+    /**
+     * Returns the key to remember the hash of the file by, or {@code null} if no other path
+     * of this run can lead to the file.
+     */
+    private Object keptKey(Path path, Object key) {
+        return shareHashes || linkCount(path) > 1 ? key : null;
+    }
+
+    private int linkCount(Path path) {
+        if (linkCountSupported) {
+            try {
+                return (Integer) Files.getAttribute(path, "unix:nlink");
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                linkCountSupported = false;
+            } catch (IOException | SecurityException ignored) {
+            }
+        }
+        return 1;
+    }
+
+    private int readHash(Path path) throws IOException {
         FNVHash hash = new FNVHash();
         try (InputStream hashReader = Files.newInputStream(path)) {
             int ch;
@@ -65,10 +396,8 @@ public class Walk {
             while ((ch = hashReader.read(buf)) >= 0) {
                 hash.hash32(buf, ch);
             }
-            writeLine(writer, hash.getHash(), path.toString());
-        } catch (IOException | SecurityException e) {
-            writeLine(writer,0, path.toString());
         }
+        return hash.getHash();
     }
 
     protected void calculateHash(Path path, Writer writer) {
@@ -97,12 +426,21 @@ public class Walk {
 
 
     protected static boolean validateArgs(String[] args) {
+        return validateArgs(args, false);
+    }
+
+    /**
+     * @param walkers whether the fifth argument, a number of directory walkers, is accepted
+     */
+    protected static boolean validateArgs(String[] args, boolean walkers) {
         if (args == null) {
             System.out.println("Arguments cannot be null");
             return false;
         }
-        if (args.length != 2) {
-            System.out.println("We need 2 arguments");
+        if (args.length < 2 || args.length > (walkers ? 5 : 4)) {
+            System.out.println(walkers
+                    ? "We need 2 to 5 arguments: <input> <output> [<cache> | - [<async in-flight MiB> | - [<walkers>]]]"
+                    : "We need 2 to 4 arguments: <input> <output> [<cache> | - [<async in-flight MiB>]]");
             return false;
         }
         if (args[0] == null) {
@@ -113,14 +451,33 @@ public class Walk {
             System.out.println("Output file cannot be null");
             return false;
         }
+        if (args.length >= 4 && asyncBudget(args) < 0) {
+            System.out.println("In-flight budget should be a positive number of MiB");
+            return false;
+        }
         return true;
     }
 
+    protected static String cacheArg(String[] args) {
+        return args.length >= 3 && !"-".equals(args[2]) ? args[2] : null;
+    }
+
+    protected static long asyncBudget(String[] args) {
+        if (args.length < 4 || "-".equals(args[3]))
+            return 0;
+        try {
+            long budget = Long.parseLong(args[3]);
+            return budget > 0 ? budget << 20 : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     public static void main(String[] args) {
-        if (!validateArgs(args) || createDirectories(args[1])) {
+        if (!validateArgs(args) || !createDirectories(args[1])) {
             return;
         }
-        Walk walk = new Walk(args[0], args[1]);
+        Walk walk = new Walk(args[0], args[1], cacheArg(args), asyncBudget(args));
         walk.start();
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package ru.ifmo.rain.krivopaltsev.walk;
+
+public interface WalkMetricsMBean {
+    long getFiles();
+
+    /**
+     * Bytes actually read and hashed, without the files counted by {@link #getCachedBytes()}.
+     */
+    long getBytes();
+
+    long getCachedFiles();
+
+    /**
+     * Bytes of the files whose hash was known from the cache or an earlier root.
+     */
+    long getCachedBytes();
+
+    long getErrors();
+
+    double getFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    String getCurrentFile();
+
+    /**
+     * Bucket {@code i} counts files hashed in {@code [2^(i-1), 2^i)} microseconds.
+     */
+    long[] getLatencyHistogram();
+
+    long getLatencyPercentile50();
+
+    long getLatencyPercentile99();
+}
@@ -0,0 +1,205 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal of a walk in progress. Every record is a line {@code "<root> <root offset> <offset>"}:
+ * index of the input line being walked, length of the output before its first result and length
+ * of the output covering the results already written for it. A record is appended only after the
+ * output is forced to disk, so the last complete line is always safe to resume from.
+ * <p>
+ * Records are written at most once per {@link #INTERVAL}, inside a root and between roots alike,
+ * and once more when the process is shut down. Every {@value #COMPACT_RECORDS} records the journal
+ * is replaced with one holding the last record only.
+ * <p>
+ * The results of the root between the two offsets are not trusted by count: on resume they are
+ * compared path by path with the walk again, see {@link ResultCollector#resume}.
+ */
+class Checkpoint implements AutoCloseable {
+    private final static long INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    private final static int COMPACT_RECORDS = 1 << 8;
+
+    private final Path file;
+    private FileChannel journal;
+    private final int root;
+    private final long rootOffset;
+    private final long offset;
+    private int currentRoot;
+    private long currentRootOffset;
+    private int records;
+    private long lastRecord = System.nanoTime();
+    private Thread shutdownHook;
+
+    private Checkpoint(Path file, int root, long rootOffset, long offset) throws IOException {
+        this.file = file;
+        this.root = root;
+        this.rootOffset = rootOffset;
+        this.offset = offset;
+        currentRoot = root;
+        currentRootOffset = rootOffset;
+        journal = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+    /**
+     * Reads the journal of a walk writing to the given output. The walk starts over
+     * if the last record does not fit the output.
+     */
+    static Checkpoint open(Path file, Path output) throws IOException {
+        int root = 0;
+        long rootOffset = 0;
+        long offset = 0;
+        if (Files.exists(file)) {
+            String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            // A record cut by a crash has no line end and is ignored
+            String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\\R");
+            for (int i = lines.length - 1; i >= 0; i--) {
+                String[] parts = lines[i].split(" ");
+                if (parts.length == 3) {
+                    try {
+                        root = Integer.parseInt(parts[0]);
+                        rootOffset = Long.parseLong(parts[1]);
+                        offset = Long.parseLong(parts[2]);
+                        break;
+                    } catch (NumberFormatException e) {
+                        root = 0;
+                        rootOffset = 0;
+                        offset = 0;
+                    }
+                }
+            }
+        }
+        long size = Files.exists(output) ? Files.size(output) : 0;
+        if (root < 0 || rootOffset < 0 || rootOffset > offset || offset > size) {
+            System.err.println("Checkpoint does not match the output file, starting over: " + file);
+            root = 0;
+            rootOffset = 0;
+            offset = 0;
+        }
+        return new Checkpoint(file, root, rootOffset, offset);
+    }
+
+    int getRoot() {
+        return root;
+    }
+
+    long getRootOffset() {
+        return rootOffset;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Notes that the next root starts at the current end of the output. Nothing is forced:
+     * until a record of the new root is written, resuming walks the previous root again.
+     */
+    synchronized void startRoot(ResultWriter writer, int root) {
+        try {
+            currentRootOffset = writer.position();
+            currentRoot = root;
+        } catch (IOException e) {
+            System.err.println("Error occurred during writing checkpoint: " + e.getMessage());
+        }
+        record(writer, false);
+    }
+
+    /**
+     * Appends a record if {@code force} is set or enough time passed since the previous one.
+     */
+    synchronized void record(ResultWriter writer, boolean force) {
+        if (journal == null || !force && System.nanoTime() - lastRecord < INTERVAL) {
+            return;
+        }
+        try {
+            long offset = writer.sync();
+            String line = currentRoot + " " + currentRootOffset + " " + offset + System.lineSeparator();
+            ByteBuffer record = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            if (++records % COMPACT_RECORDS == 0) {
+                compact(record);
+            } else {
+                journal.write(record);
+                journal.force(false);
+            }
+            lastRecord = System.nanoTime();
+        } catch (IOException e) {
+            System.err.println("Error occurred during writing checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the record to a new journal and moves it over the old one.
+     */
+    private void compact(ByteBuffer record) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(record);
+            channel.force(false);
+        }
+        journal.close();
+        journal = null;
+        try {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            journal = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Forces a record when the process is shut down before the walk completes.
+     */
+    void recordOnShutdown(ResultWriter writer) {
+        shutdownHook = new Thread(() -> record(writer, true));
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Drops the results written for the current root, so that it can be walked again.
+     */
+    synchronized void discardRoot(ResultWriter writer) {
+        try {
+            writer.truncate(currentRootOffset);
+        } catch (IOException e) {
+            System.err.println("Error occurred during truncating output file: " + e.getMessage());
+        }
+        // The last record may point past the truncated output
+        record(writer, true);
+    }
+
+    /**
+     * Removes the journal after the walk has completed.
+     */
+    synchronized void finish() {
+        try {
+            journal.close();
+            journal = null;
+            Files.delete(file);
+        } catch (IOException e) {
+            System.err.println("Error occurred during removing checkpoint: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignored) {
+                // Already shutting down, the hook records the progress
+            }
+            shutdownHook = null;
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+
+/**
+ * Lists a single directory: its files and a task per subdirectory. Subdirectory tasks are forked
+ * at once while at most {@value #AHEAD} directories are listed ahead of the walk, so listing runs
+ * in parallel with hashing in bounded memory. {@link #walk} drains the listings in order and hands
+ * every file over as soon as the directories before it are listed, so files come out exactly as
+ * {@link Files#walkFileTree} would visit them, including the point where it would stop on an error.
+ */
+class DirectoryTask extends RecursiveTask<DirectoryTask.Listing> {
+    private final static long serialVersionUID = 1L;
+    private final static int AHEAD = 1 << 12;
+
+    private final Path dir;
+    private final Semaphore ahead;
+    private boolean forked;
+
+    static class Listing {
+        /**
+         * Files and subdirectory tasks in listing order.
+         */
+        final List<Object> entries = new ArrayList<>();
+        IOException error;
+    }
+
+    private DirectoryTask(Path dir, Semaphore ahead) {
+        this.dir = dir;
+        this.ahead = ahead;
+    }
+
+    /**
+     * Walks the tree, passing files to the visitor in the order of {@link Files#walkFileTree}.
+     *
+     * @param visitor returns {@code false} to stop the walk
+     * @param directoryDone called after all files of a directory and its subdirectories, may be {@code null}
+     * @throws IOException the error that would stop {@link Files#walkFileTree}, after all files before it
+     */
+    static void walk(ForkJoinPool pool, Path root, Predicate<Path> visitor, Runnable directoryDone) throws IOException {
+        if (!Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory()) {
+            visitor.test(root);
+            return;
+        }
+        Semaphore ahead = new Semaphore(AHEAD);
+        Deque<Listing> listings = new ArrayDeque<>();
+        Deque<Iterator<Object>> positions = new ArrayDeque<>();
+        Listing first = pool.invoke(new DirectoryTask(root, ahead));
+        listings.push(first);
+        positions.push(first.entries.iterator());
+        try {
+            while (!positions.isEmpty()) {
+                Iterator<Object> position = positions.peek();
+                if (position.hasNext()) {
+                    Object entry = position.next();
+                    if (entry instanceof DirectoryTask) {
+                        Listing listing = ((DirectoryTask) entry).listing(pool);
+                        listings.push(listing);
+                        positions.push(listing.entries.iterator());
+                    } else if (!visitor.test((Path) entry)) {
+                        return;
+                    }
+                } else {
+                    positions.pop();
+                    Listing listing = listings.pop();
+                    if (listing.error != null) {
+                        throw listing.error;
+                    }
+                    if (directoryDone != null) {
+                        directoryDone.run();
+                    }
+                }
+            }
+        } finally {
+            // Tasks listed ahead of a stopped walk are not needed any more
+            for (Iterator<Object> position : positions) {
+                position.forEachRemaining(entry -> {
+                    if (entry instanceof DirectoryTask) {
+                        ((DirectoryTask) entry).cancel(false);
+                    }
+                });
+            }
+        }
+    }
+
+    private Listing listing(ForkJoinPool pool) {
+        if (!forked) {
+            return pool.invoke(this);
+        }
+        try {
+            return join();
+        } finally {
+            ahead.release();
+        }
+    }
+
+    @Override
+    protected Listing compute() {
+        Listing listing = new Listing();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                if (Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory()) {
+                    DirectoryTask task = new DirectoryTask(entry, ahead);
+                    if (ahead.tryAcquire()) {
+                        task.forked = true;
+                        task.fork();
+                    }
+                    listing.entries.add(task);
+                } else {
+                    listing.entries.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            listing.error = e;
+        } catch (DirectoryIteratorException e) {
+            listing.error = e.getCause();
+        }
+        return listing;
+    }
+}
@@ -0,0 +1,139 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+import static java.nio.file.FileVisitResult.CONTINUE;
+
+/**
+ * Collects files and reports groups with equal contents. Only files sharing a size are read,
+ * and only their first {@code PREFIX_SIZE} bytes unless the prefix hashes collide too. Files whose
+ * hashes are equal are compared byte by byte before they are reported, so a hash collision never
+ * makes a duplicate, whichever algorithm is used.
+ */
+class DuplicateFinder extends SimpleFileVisitor<Path> {
+    private final static int PREFIX_SIZE = 4096;
+    private final static int COMPARE_BUFFER_SIZE = 1 << 16;
+
+    private final HashAlgorithm algorithm;
+    private final Map<Long, List<Path>> bySize = new LinkedHashMap<>();
+    private final Set<Path> visited = new HashSet<>();
+    private final byte[] firstBuffer = new byte[COMPARE_BUFFER_SIZE];
+    private final byte[] secondBuffer = new byte[COMPARE_BUFFER_SIZE];
+
+    DuplicateFinder(HashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile() && visited.add(file.toAbsolutePath().normalize())) {
+            bySize.computeIfAbsent(attrs.size(), size -> new ArrayList<>()).add(file);
+        }
+        return CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+        System.err.println("Error occurred during scanning \"" + file + "\", error: " + exc.getMessage());
+        return CONTINUE;
+    }
+
+    void write(ResultWriter writer) throws IOException {
+        for (Map.Entry<Long, List<Path>> sameSize : bySize.entrySet()) {
+            if (sameSize.getValue().size() < 2) {
+                continue;
+            }
+            for (Map.Entry<ByteBuffer, List<Path>> samePrefix : groupByHash(sameSize.getValue(), true).entrySet()) {
+                if (samePrefix.getValue().size() < 2) {
+                    continue;
+                }
+                if (sameSize.getKey() <= PREFIX_SIZE) {
+                    writeGroup(writer, samePrefix.getKey(), samePrefix.getValue());
+                } else {
+                    for (Map.Entry<ByteBuffer, List<Path>> group : groupByHash(samePrefix.getValue(), false).entrySet()) {
+                        if (group.getValue().size() >= 2) {
+                            writeGroup(writer, group.getKey(), group.getValue());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Map<ByteBuffer, List<Path>> groupByHash(List<Path> files, boolean prefix) {
+        Map<ByteBuffer, List<Path>> groups = new LinkedHashMap<>();
+        for (Path file : files) {
+            try {
+                byte[] hash = prefix
+                        ? RecursiveFileVisitor.hashPrefix(file, algorithm, PREFIX_SIZE)
+                        : RecursiveFileVisitor.hashFile(file, algorithm);
+                groups.computeIfAbsent(ByteBuffer.wrap(hash), h -> new ArrayList<>()).add(file);
+            } catch (IOException e) {
+                System.err.println("Error during calculating hash of file: " + file);
+            }
+        }
+        return groups;
+    }
+
+    private void writeGroup(ResultWriter writer, ByteBuffer hash, List<Path> files) throws IOException {
+        for (List<Path> group : groupByContents(files)) {
+            if (group.size() < 2) {
+                continue;
+            }
+            for (Path file : group) {
+                writer.write(hash.array(), file.toString());
+            }
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Splits files with equal hashes into groups with equal contents.
+     */
+    private List<List<Path>> groupByContents(List<Path> files) {
+        List<List<Path>> groups = new ArrayList<>();
+        for (Path file : files) {
+            try {
+                List<Path> same = null;
+                for (List<Path> group : groups) {
+                    if (sameContents(group.get(0), file)) {
+                        same = group;
+                        break;
+                    }
+                }
+                if (same == null) {
+                    same = new ArrayList<>();
+                    groups.add(same);
+                }
+                same.add(file);
+            } catch (IOException e) {
+                System.err.println("Error occurred during comparing \"" + file + "\", error: " + e.getMessage());
+            }
+        }
+        return groups;
+    }
+
+    private boolean sameContents(Path first, Path second) throws IOException {
+        try (InputStream firstStream = Files.newInputStream(first);
+             InputStream secondStream = Files.newInputStream(second)) {
+            while (true) {
+                int read = firstStream.readNBytes(firstBuffer, 0, COMPARE_BUFFER_SIZE);
+                if (secondStream.readNBytes(secondBuffer, 0, COMPARE_BUFFER_SIZE) != read
+                        || !Arrays.equals(firstBuffer, 0, read, secondBuffer, 0, read)) {
+                    return false;
+                }
+                if (read < COMPARE_BUFFER_SIZE) {
+                    return true;
+                }
+            }
+        }
+    }
+}
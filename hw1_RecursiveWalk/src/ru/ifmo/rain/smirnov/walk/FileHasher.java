@@ -0,0 +1,19 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental hash function over file contents.
+ * A hasher is used for a single file and is not thread-safe.
+ */
+public interface FileHasher {
+    /**
+     * Consumes all remaining bytes of the buffer. The buffer byte order may be changed.
+     */
+    void update(ByteBuffer buffer);
+
+    /**
+     * Returns big-endian digest of all consumed bytes.
+     */
+    byte[] digest();
+}
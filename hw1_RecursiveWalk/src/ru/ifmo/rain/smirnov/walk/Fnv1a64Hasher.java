@@ -0,0 +1,26 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 64-bit FNV-1a. Like {@link Fnv1Hasher} it is a serial chain of one multiply per byte.
+ */
+class Fnv1a64Hasher implements FileHasher {
+    private final static long FNV_64_INIT = 0xcbf29ce484222325L;
+    private final static long FNV_64_PRIME = 0x100000001b3L;
+    private long hash = FNV_64_INIT;
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        long h = hash;
+        while (buffer.hasRemaining()) {
+            h = (h ^ (buffer.get() & 0xff)) * FNV_64_PRIME;
+        }
+        hash = h;
+    }
+
+    @Override
+    public byte[] digest() {
+        return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+    }
+}
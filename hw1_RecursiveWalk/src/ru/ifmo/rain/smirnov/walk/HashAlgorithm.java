@@ -0,0 +1,41 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.util.function.Supplier;
+
+public enum HashAlgorithm {
+    FNV1("fnv1", 4, Fnv1Hasher::new),
+    FNV1A64("fnv1a64", 8, Fnv1a64Hasher::new),
+    XXHASH64("xxhash64", 8, XxHash64Hasher::new),
+    SHA256("sha256", 32, Sha256Hasher::new);
+
+    private final String name;
+    private final int digestSize;
+    private final Supplier<FileHasher> factory;
+
+    HashAlgorithm(String name, int digestSize, Supplier<FileHasher> factory) {
+        this.name = name;
+        this.digestSize = digestSize;
+        this.factory = factory;
+    }
+
+    public FileHasher newHasher() {
+        return factory.get();
+    }
+
+    public int getDigestSize() {
+        return digestSize;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name.equals(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.nio.file.Path;
+import java.util.concurrent.*;
+
+/**
+ * Hashes files on a pool of workers and writes results in the order they were added.
+ * At most {@code QUEUE_FACTOR * threads} files are in flight, so traversal blocks
+ * when hashing falls behind instead of buffering the whole tree.
+ */
+class ParallelCollector extends ResultCollector {
+    private static final int QUEUE_FACTOR = 16;
+    private static final Entry END = new Entry(null, null, null);
+
+    private final ExecutorService workers;
+    private final BlockingQueue<Entry> pending;
+    private final Thread writerThread;
+
+    private static class Entry {
+        private final String path;
+        private final Future<byte[]> hash;
+        private final Runnable marker;
+
+        Entry(String path, Future<byte[]> hash, Runnable marker) {
+            this.path = path;
+            this.hash = hash;
+            this.marker = marker;
+        }
+    }
+
+    ParallelCollector(ResultWriter writer, HashAlgorithm algorithm, TreeHasher treeHasher, WalkMetrics metrics, int threads) {
+        super(writer, algorithm, treeHasher, metrics);
+        workers = Executors.newFixedThreadPool(threads);
+        pending = new ArrayBlockingQueue<>(QUEUE_FACTOR * threads);
+        writerThread = new Thread(this::writeAll);
+        writerThread.start();
+    }
+
+    @Override
+    void add(Path file) {
+        if (skipped(file.toString())) {
+            return;
+        }
+        FutureTask<byte[]> task = new FutureTask<>(() -> hash(file));
+        if (enqueue(new Entry(file.toString(), task, null))) {
+            workers.execute(task);
+        }
+    }
+
+    @Override
+    void addFailed(String path) {
+        if (!skipped(path)) {
+            enqueue(new Entry(path, CompletableFuture.completedFuture(emptyHash()), null));
+        }
+    }
+
+    @Override
+    void addMarker(Runnable action) {
+        enqueue(new Entry(null, null, action));
+    }
+
+    private boolean enqueue(Entry entry) {
+        try {
+            pending.put(entry);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void writeAll() {
+        try {
+            Entry entry;
+            while ((entry = pending.take()) != END) {
+                if (entry.marker != null) {
+                    entry.marker.run();
+                    continue;
+                }
+                byte[] hash;
+                try {
+                    hash = entry.hash.get();
+                } catch (ExecutionException e) {
+                    System.err.println("Error during calculating hash of file: " + entry.path);
+                    hash = emptyHash();
+                }
+                writeResult(hash, entry.path);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            pending.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            writerThread.interrupt();
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+}
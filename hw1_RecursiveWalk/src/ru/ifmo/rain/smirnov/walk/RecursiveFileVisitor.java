@@ -1,44 +1,116 @@
 package ru.ifmo.rain.smirnov.walk;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 
 import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.FileVisitResult.TERMINATE;
 
 public class RecursiveFileVisitor extends SimpleFileVisitor<Path> {
     private final static int BUFFER_SIZE = 4096;
-    private final BufferedWriter bufferedWriter;
+    private final static long MAP_THRESHOLD = 1L << 20;
+    private final static long MAP_WINDOW = 1L << 30;
+    private final ResultCollector collector;
+    private final Runnable directoryMarker;
 
-    RecursiveFileVisitor(BufferedWriter writer) {
-        this.bufferedWriter = writer;
+    /**
+     * @param directoryMarker action queued to the collector after each completed directory, may be {@code null}
+     */
+    RecursiveFileVisitor(ResultCollector collector, Runnable directoryMarker) {
+        this.collector = collector;
+        this.directoryMarker = directoryMarker;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        collector.add(file);
+        // The root is walked again from the start after a resume mismatch
+        return collector.isMismatch() ? TERMINATE : CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        if (exc != null) {
+            throw exc;
+        }
+        if (directoryMarker != null) {
+            collector.addMarker(directoryMarker);
+        }
+        return CONTINUE;
+    }
+
+    static byte[] getFileHash(Path path, HashAlgorithm algorithm, TreeHasher treeHasher, WalkMetrics metrics) {
+        metrics.fileStarted(path);
+        long start = System.nanoTime();
         try {
-            bufferedWriter.write(String.format("%08x", getFileFNVHash(file)) + " " + file);
-            bufferedWriter.newLine();
+            long size = Files.size(path);
+            byte[] hash = treeHasher != null && treeHasher.accepts(size)
+                    ? treeHasher.hash(path, size)
+                    : hashFile(path, algorithm, size, BUFFER_SIZE, MAP_THRESHOLD);
+            metrics.fileHashed(size, System.nanoTime() - start);
+            return hash;
         } catch (IOException e) {
-            System.err.println("Error occurred during writing into output file: " + e.getMessage());
+            metrics.fileFailed();
+            System.err.println("Error during calculating hash of file: " + path);
+            return new byte[algorithm.getDigestSize()];
         }
-        return CONTINUE;
     }
 
-    private static int getFileFNVHash(Path path) {
-        byte[] buff = new byte[BUFFER_SIZE];
-        int hash = 0x811c9dc5;
+    static byte[] hashFile(Path path, HashAlgorithm algorithm) throws IOException {
+        return hashFile(path, algorithm, BUFFER_SIZE, MAP_THRESHOLD);
+    }
+
+    static byte[] hashFile(Path path, HashAlgorithm algorithm, int bufferSize, long mapThreshold) throws IOException {
+        return hashFile(path, algorithm, Files.size(path), bufferSize, mapThreshold);
+    }
+
+    private static byte[] hashFile(Path path, HashAlgorithm algorithm, long size, int bufferSize, long mapThreshold) throws IOException {
+        FileHasher hasher = algorithm.newHasher();
+        if (size < mapThreshold) {
+            hashStream(path, hasher, bufferSize);
+        } else {
+            hashMapped(path, hasher);
+        }
+        return hasher.digest();
+    }
+
+    static byte[] hashPrefix(Path path, HashAlgorithm algorithm, int size) throws IOException {
+        FileHasher hasher = algorithm.newHasher();
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int count = 0;
+            while (buffer.hasRemaining() && count != -1) {
+                count = channel.read(buffer);
+            }
+        }
+        buffer.flip();
+        hasher.update(buffer);
+        return hasher.digest();
+    }
+
+    private static void hashStream(Path path, FileHasher hasher, int bufferSize) throws IOException {
+        byte[] buff = new byte[bufferSize];
         try (InputStream reader = Files.newInputStream(path)) {
             int count;
             while ((count = reader.read(buff)) != -1) {
-                for (int i = 0; i < count; i++) {
-                    hash = (hash * 0x01000193) ^ (buff[i] & 0xff);
-                }
+                hasher.update(ByteBuffer.wrap(buff, 0, count));
+            }
+        }
+    }
+
+    /**
+     * Hashes the file straight from the page cache, mapping it by windows
+     * since a single mapping cannot exceed 2 GiB.
+     */
+    private static void hashMapped(Path path, FileHasher hasher) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position)));
             }
-        } catch (IOException e) {
-            System.err.println("Error during calculating hash of file: " + path);
-            hash = 0x0000_0000;
         }
-        return hash;
     }
 }
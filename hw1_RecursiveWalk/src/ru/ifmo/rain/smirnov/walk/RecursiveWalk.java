@@ -2,61 +2,198 @@ package ru.ifmo.rain.smirnov.walk;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 public class RecursiveWalk {
     public static void main(String[] args) {
-        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
-            System.err.println("Incorrect arguments, needed two: <input filename> <output filename>");
-        } else {
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.UTF_8))) {
-                try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), StandardCharsets.UTF_8))) {
+        WalkArguments arguments = WalkArguments.parse(args);
+        if (arguments != null) {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(arguments.input), StandardCharsets.UTF_8))) {
+                if (arguments.watch) {
+                    watch(br, arguments);
+                    return;
+                }
+                try (Checkpoint checkpoint = arguments.checkpoint == null || arguments.duplicates ? null : Checkpoint.open(Paths.get(arguments.checkpoint), Paths.get(arguments.output));
+                     ResultWriter rw = new ResultWriter(Paths.get(arguments.output), checkpoint == null ? 0 : checkpoint.getOffset())) {
                     try {
-                        String path;
-                        while ((path = br.readLine()) != null) {
-                            RecursiveFileVisitor visitor = new RecursiveFileVisitor(bw);
-                            Path path1;
-                            try {
-                                path1 = Paths.get(path);
-                                try {
-                                    Files.walkFileTree(path1, visitor);
-                                } catch (IOException e) {
-                                    System.err.println("Error occurred during scanning directory \"" + path1 + "\", error: " + e.getMessage());
-                                    try {
-                                        bw.write(String.format("%08x", 0) + " " + path);
-                                        bw.newLine();
-                                    } catch (IOException r) {
-                                        System.err.println("Error occurred during writing output file: " + r.getMessage());
-                                    }
-                                }
-                            } catch (InvalidPathException e) {
-                                System.err.println("Invalid path: " + path);
-                                try {
-                                    bw.write(String.format("%08x", 0) + " " + path);
-                                    bw.newLine();
-                                } catch (IOException r) {
-                                    System.err.println("Error during writing output file: " + e.getMessage());
-                                }
-                            }
+                        if (arguments.duplicates) {
+                            findDuplicates(br, rw, arguments);
+                        } else {
+                            walk(br, rw, arguments, checkpoint);
                         }
                     } catch (IOException e) {
                         System.err.println("Error occurred during reading input file: " + e.getMessage());
                     }
-                } catch (FileNotFoundException e) {
+                } catch (InvalidPathException e) {
+                    System.err.println("Invalid output or checkpoint path: " + e.getInput());
+                } catch (FileSystemException e) {
                     System.err.println("The file exists but is a directory rather than a regular file, " +
                             "does not exist but cannot be created, " +
-                            "or cannot be opened for any other reason: " + args[1]);
+                            "or cannot be opened for any other reason: " + arguments.output);
                 } catch (IOException e) {
                     System.err.println("Error occurred: " + e.getMessage());
                 }
             } catch (FileNotFoundException e) {
-                System.err.println("File is not found: " + args[0]);
+                System.err.println("File is not found: " + arguments.input);
             } catch (IOException e) {
                 System.err.println("Error occurred: " + e.getMessage());
             }
         }
     }
+
+    private static void walk(BufferedReader br, ResultWriter rw, WalkArguments arguments, Checkpoint checkpoint) throws IOException {
+        ForkJoinPool pool = arguments.walkers > 0 ? new ForkJoinPool(arguments.walkers) : null;
+        WalkMetrics metrics = new WalkMetrics();
+        metrics.register(RecursiveWalk.class, "RecursiveWalk");
+        if (arguments.progress > 0) {
+            metrics.startReporting(arguments.progress);
+        }
+        if (checkpoint != null) {
+            checkpoint.recordOnShutdown(rw);
+        }
+        try (ResultCollector collector = createCollector(rw, arguments, metrics)) {
+            Runnable marker = checkpoint == null ? null : () -> checkpoint.record(rw, false);
+            RecursiveFileVisitor visitor = new RecursiveFileVisitor(collector, marker);
+            String path;
+            for (int index = 0; (path = br.readLine()) != null; index++) {
+                if (checkpoint != null && index < checkpoint.getRoot()) {
+                    continue;
+                }
+                if (checkpoint != null && index == checkpoint.getRoot()) {
+                    collector.resume(Paths.get(arguments.output), checkpoint.getRootOffset());
+                }
+                walkRoot(path, visitor, marker, pool, collector, metrics);
+                if (checkpoint != null) {
+                    if (!collector.finishResume()) {
+                        System.err.println("Tree of \"" + path + "\" has changed since the checkpoint, walking it again");
+                        collector.addMarker(() -> checkpoint.discardRoot(rw));
+                        walkRoot(path, visitor, marker, pool, collector, metrics);
+                    }
+                    final int next = index + 1;
+                    collector.addMarker(() -> checkpoint.startRoot(rw, next));
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            metrics.close();
+        }
+        if (checkpoint != null) {
+            rw.sync();
+            checkpoint.finish();
+        }
+        if (arguments.progress > 0) {
+            System.err.println(metrics);
+        }
+    }
+
+    /**
+     * Daemon mode: after the initial walk changes are followed through a {@link WalkWatcher}.
+     * Lines "snapshot" and "stop" on the standard input write the output and finish the watch;
+     * the output is also written on exit.
+     */
+    private static void watch(BufferedReader br, WalkArguments arguments) throws IOException {
+        WalkMetrics metrics = new WalkMetrics();
+        metrics.register(WalkWatcher.class, "WalkWatcher");
+        if (arguments.progress > 0) {
+            metrics.startReporting(arguments.progress);
+        }
+        TreeHasher treeHasher = arguments.treeHash ? new TreeHasher(arguments.algorithm, ForkJoinPool.commonPool()) : null;
+        try (WalkWatcher watcher = new WalkWatcher(arguments.algorithm, treeHasher, metrics, Paths.get(arguments.output))) {
+            String path;
+            while ((path = br.readLine()) != null) {
+                watcher.addRoot(path);
+            }
+            watcher.snapshot();
+            Runtime.getRuntime().addShutdownHook(new Thread(watcher::snapshot));
+            Thread commands = new Thread(() -> readCommands(watcher));
+            commands.setDaemon(true);
+            commands.start();
+            watcher.run();
+        } finally {
+            metrics.close();
+        }
+    }
+
+    private static void readCommands(WalkWatcher watcher) {
+        try (BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String command;
+            while ((command = commands.readLine()) != null) {
+                switch (command.trim()) {
+                    case "snapshot":
+                        watcher.snapshot();
+                        break;
+                    case "stop":
+                        watcher.close();
+                        return;
+                    default:
+                        System.err.println("Unknown command: " + command);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error occurred during reading commands: " + e.getMessage());
+        }
+    }
+
+    private static void findDuplicates(BufferedReader br, ResultWriter rw, WalkArguments arguments) throws IOException {
+        DuplicateFinder finder = new DuplicateFinder(arguments.algorithm);
+        String path;
+        while ((path = br.readLine()) != null) {
+            try {
+                Files.walkFileTree(Paths.get(path), finder);
+            } catch (InvalidPathException e) {
+                System.err.println("Invalid path: " + path);
+            }
+        }
+        finder.write(rw);
+    }
+
+    /**
+     * @param marker action queued to the collector after each completed directory, may be {@code null}
+     */
+    private static void walkRoot(String path, RecursiveFileVisitor visitor, Runnable marker, ForkJoinPool pool,
+                                 ResultCollector collector, WalkMetrics metrics) {
+        Path root;
+        try {
+            root = Paths.get(path);
+        } catch (InvalidPathException e) {
+            System.err.println("Invalid path: " + path);
+            metrics.fileFailed();
+            collector.addFailed(path);
+            return;
+        }
+        try {
+            if (pool == null) {
+                Files.walkFileTree(root, visitor);
+            } else {
+                walkParallel(pool, root, collector, marker);
+            }
+        } catch (IOException e) {
+            System.err.println("Error occurred during scanning directory \"" + root + "\", error: " + e.getMessage());
+            metrics.fileFailed();
+            collector.addFailed(path);
+        }
+    }
+
+    private static void walkParallel(ForkJoinPool pool, Path root, ResultCollector collector, Runnable marker) throws IOException {
+        DirectoryTask.walk(pool, root, file -> {
+            collector.add(file);
+            // The root is walked again from the start after a resume mismatch
+            return !collector.isMismatch();
+        }, marker == null ? null : () -> collector.addMarker(marker));
+    }
+
+    private static ResultCollector createCollector(ResultWriter writer, WalkArguments arguments, WalkMetrics metrics) {
+        TreeHasher treeHasher = arguments.treeHash ? new TreeHasher(arguments.algorithm, ForkJoinPool.commonPool()) : null;
+        if (arguments.threads > 1) {
+            return new ParallelCollector(writer, arguments.algorithm, treeHasher, metrics, arguments.threads);
+        }
+        return new SequentialCollector(writer, arguments.algorithm, treeHasher, metrics);
+    }
 }
@@ -0,0 +1,136 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+abstract class ResultCollector implements AutoCloseable {
+    private final ResultWriter writer;
+    private final HashAlgorithm algorithm;
+    private final TreeHasher treeHasher;
+    private final WalkMetrics metrics;
+    private BufferedReader resumed;
+    private boolean mismatch;
+
+    ResultCollector(ResultWriter writer, HashAlgorithm algorithm, TreeHasher treeHasher, WalkMetrics metrics) {
+        this.writer = writer;
+        this.algorithm = algorithm;
+        this.treeHasher = treeHasher;
+        this.metrics = metrics;
+    }
+
+    abstract void add(Path file);
+
+    abstract void addFailed(String path);
+
+    /**
+     * Runs the action once all results added before it are written.
+     */
+    abstract void addMarker(Runnable action);
+
+    /**
+     * Continues a walk whose first results are already in the output after {@code offset}.
+     * Next results are dropped without hashing while their paths are those of the output lines;
+     * the first one that differs means the tree has changed, see {@link #finishResume()}.
+     * The output must end with these lines, the collector stops reading them before writing.
+     */
+    void resume(Path output, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(output, StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        resumed = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1));
+        mismatch = false;
+    }
+
+    /**
+     * Returns whether the result for the path is to be dropped while resuming.
+     */
+    boolean skipped(String path) {
+        if (resumed == null) {
+            return false;
+        }
+        if (!mismatch) {
+            String line = readResumed();
+            if (line == null) {
+                closeResumed();
+                return false;
+            }
+            mismatch = !path.equals(line.substring(line.indexOf(' ') + 1));
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the walk has met a path other than the one in the output,
+     * all next results are dropped till {@link #finishResume()}.
+     */
+    boolean isMismatch() {
+        return mismatch;
+    }
+
+    /**
+     * Ends resuming of a root. Returns {@code false} if its results in the output do not match
+     * the walk: nothing was written for it then, and these results have to be discarded.
+     */
+    boolean finishResume() {
+        if (resumed == null) {
+            return true;
+        }
+        if (!mismatch) {
+            mismatch = readResumed() != null;
+        }
+        closeResumed();
+        boolean matched = !mismatch;
+        mismatch = false;
+        return matched;
+    }
+
+    private String readResumed() {
+        try {
+            return resumed.readLine();
+        } catch (IOException e) {
+            System.err.println("Error occurred during reading output file: " + e.getMessage());
+            mismatch = true;
+            return "";
+        }
+    }
+
+    private void closeResumed() {
+        try {
+            resumed.close();
+        } catch (IOException ignored) {
+        }
+        resumed = null;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    byte[] hash(Path file) {
+        return RecursiveFileVisitor.getFileHash(file, algorithm, treeHasher, metrics);
+    }
+
+    byte[] emptyHash() {
+        return new byte[algorithm.getDigestSize()];
+    }
+
+    void writeResult(byte[] hash, String path) {
+        try {
+            writer.write(hash, path);
+        } catch (IOException e) {
+            System.err.println("Error occurred during writing into output file: " + e.getMessage());
+        }
+    }
+}
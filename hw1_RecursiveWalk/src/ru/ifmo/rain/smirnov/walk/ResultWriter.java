@@ -0,0 +1,125 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes "hash path" lines in UTF-8 through a single direct buffer,
+ * without building intermediate strings per line. Methods are synchronized
+ * so that a checkpoint can be forced from a shutdown hook between two lines.
+ */
+class ResultWriter implements AutoCloseable {
+    private final static int BUFFER_SIZE = 1 << 16;
+    private final static byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private final static byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    ResultWriter(Path file) throws IOException {
+        this(file, 0);
+    }
+
+    /**
+     * Opens the file keeping its first {@code offset} bytes and appending after them.
+     */
+    ResultWriter(Path file, long offset) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            channel.truncate(offset);
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Flushes and forces written lines to the device, returning the output length.
+     */
+    synchronized long sync() throws IOException {
+        flush();
+        channel.force(false);
+        return channel.position();
+    }
+
+    /**
+     * Returns the output length including lines not flushed yet.
+     */
+    synchronized long position() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    /**
+     * Drops everything written after the first {@code offset} bytes.
+     */
+    synchronized void truncate(long offset) throws IOException {
+        flush();
+        channel.truncate(offset);
+        channel.position(offset);
+    }
+
+    synchronized void write(byte[] hash, String path) throws IOException {
+        ensureRemaining(2 * hash.length + 1);
+        for (byte b : hash) {
+            buffer.put(HEX_DIGITS[(b >> 4) & 0xf]);
+            buffer.put(HEX_DIGITS[b & 0xf]);
+        }
+        buffer.put((byte) ' ');
+        encode(CharBuffer.wrap(path));
+        newLine();
+    }
+
+    synchronized void newLine() throws IOException {
+        ensureRemaining(LINE_SEPARATOR.length);
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    private void encode(CharBuffer chars) throws IOException {
+        encoder.reset();
+        CoderResult result;
+        while ((result = encoder.encode(chars, buffer, true)).isOverflow()) {
+            flush();
+        }
+        while ((result = encoder.flush(buffer)).isOverflow()) {
+            flush();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+
+    private void ensureRemaining(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush();
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.nio.file.Path;
+
+class SequentialCollector extends ResultCollector {
+    SequentialCollector(ResultWriter writer, HashAlgorithm algorithm, TreeHasher treeHasher, WalkMetrics metrics) {
+        super(writer, algorithm, treeHasher, metrics);
+    }
+
+    @Override
+    void add(Path file) {
+        if (!skipped(file.toString())) {
+            writeResult(hash(file), file.toString());
+        }
+    }
+
+    @Override
+    void addFailed(String path) {
+        if (!skipped(path)) {
+            writeResult(emptyHash(), path);
+        }
+    }
+
+    @Override
+    void addMarker(Runnable action) {
+        action.run();
+    }
+}
@@ -0,0 +1,85 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Merkle tree hash of large files. Fixed-size chunks are hashed in parallel and combined pairwise,
+ * a range of chunks being split at the largest power of two below its length, as in RFC 6962.
+ * Leaves and inner nodes are prefixed with distinct bytes, so a root never equals a plain hash.
+ */
+class TreeHasher {
+    private final static long CHUNK_SIZE = 4L << 20;
+    private final static byte[] LEAF = {0};
+    private final static byte[] NODE = {1};
+
+    private final HashAlgorithm algorithm;
+    private final ForkJoinPool pool;
+
+    TreeHasher(HashAlgorithm algorithm, ForkJoinPool pool) {
+        this.algorithm = algorithm;
+        this.pool = pool;
+    }
+
+    boolean accepts(long size) {
+        return size > CHUNK_SIZE;
+    }
+
+    byte[] hash(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return pool.invoke(new RangeTask(channel, size, 0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE));
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+    private class RangeTask extends RecursiveTask<byte[]> {
+        private final static long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long size;
+        private final long from;
+        private final long to;
+
+        RangeTask(FileChannel channel, long size, long from, long to) {
+            this.channel = channel;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected byte[] compute() {
+            FileHasher hasher = algorithm.newHasher();
+            if (to - from == 1) {
+                long position = from * CHUNK_SIZE;
+                try {
+                    hasher.update(ByteBuffer.wrap(LEAF));
+                    hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                long split = from + Long.highestOneBit(to - from - 1);
+                RangeTask left = new RangeTask(channel, size, from, split);
+                left.fork();
+                byte[] right = new RangeTask(channel, size, split, to).compute();
+                hasher.update(ByteBuffer.wrap(NODE));
+                hasher.update(ByteBuffer.wrap(left.join()));
+                hasher.update(ByteBuffer.wrap(right));
+            }
+            return hasher.digest();
+        }
+    }
+}
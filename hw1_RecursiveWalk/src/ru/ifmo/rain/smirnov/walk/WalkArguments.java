@@ -0,0 +1,88 @@
+package ru.ifmo.rain.smirnov.walk;
+
+class WalkArguments {
+    private static final String USAGE = "Incorrect arguments, needed: [--threads <count>] [--walkers <count>] [--hash fnv1|fnv1a64|xxhash64|sha256] [--duplicates] [--tree-hash] [--progress <seconds>] [--checkpoint <journal>] [--watch] <input filename> <output filename>";
+
+    String input;
+    String output;
+    int threads = 1;
+    int walkers = 0;
+    boolean duplicates;
+    boolean treeHash;
+    int progress;
+    String checkpoint;
+    boolean watch;
+    HashAlgorithm algorithm = HashAlgorithm.FNV1;
+
+    static WalkArguments parse(String[] args) {
+        if (args == null || args.length < 2) {
+            System.err.println(USAGE);
+            return null;
+        }
+        WalkArguments result = new WalkArguments();
+        int i = 0;
+        try {
+            for (; i < args.length - 2; i++) {
+                if (args[i] == null) {
+                    break;
+                }
+                switch (args[i]) {
+                    case "--threads":
+                        result.threads = Integer.parseInt(args[++i]);
+                        if (result.threads < 1) {
+                            System.err.println("Threads count cannot be less than 1");
+                            return null;
+                        }
+                        break;
+                    case "--walkers":
+                        result.walkers = Integer.parseInt(args[++i]);
+                        if (result.walkers < 1) {
+                            System.err.println("Walkers count cannot be less than 1");
+                            return null;
+                        }
+                        break;
+                    case "--progress":
+                        result.progress = Integer.parseInt(args[++i]);
+                        if (result.progress < 1) {
+                            System.err.println("Progress interval cannot be less than 1 second");
+                            return null;
+                        }
+                        break;
+                    case "--tree-hash":
+                        result.treeHash = true;
+                        break;
+                    case "--checkpoint":
+                        result.checkpoint = args[++i];
+                        break;
+                    case "--watch":
+                        result.watch = true;
+                        break;
+                    case "--duplicates":
+                        result.duplicates = true;
+                        break;
+                    case "--hash":
+                        result.algorithm = HashAlgorithm.forName(args[++i]);
+                        if (result.algorithm == null) {
+                            System.err.println("Unknown hash algorithm: " + args[i]);
+                            return null;
+                        }
+                        break;
+                    default:
+                        System.err.println("Unknown option: " + args[i]);
+                        System.err.println(USAGE);
+                        return null;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Incorrect value of option: " + args[i - 1]);
+            return null;
+        }
+        if (i != args.length - 2 || args[i] == null || args[i + 1] == null) {
+            System.err.println(USAGE);
+            return null;
+        }
+        result.input = args[i];
+        result.output = args[i + 1];
+        return result;
+    }
+}
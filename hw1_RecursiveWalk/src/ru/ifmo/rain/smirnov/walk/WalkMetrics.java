@@ -0,0 +1,157 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a running walk, published through JMX and optionally printed to stderr.
+ */
+public class WalkMetrics implements WalkMetricsMBean, AutoCloseable {
+    private static final int BUCKETS = 40;
+
+    private final long startTime = System.nanoTime();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+    private volatile Path currentFile;
+    private ObjectName name;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Registers the metrics as {@code <package of owner>:type=<type>}.
+     */
+    public void register(Class<?> owner, String type) {
+        try {
+            name = new ObjectName(owner.getPackage().getName() + ":type=" + type);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (JMException e) {
+            name = null;
+            System.err.println("Walk metrics are not available through JMX: " + e.getMessage());
+        }
+    }
+
+    public void startReporting(int seconds) {
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> System.err.println(this), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    public void fileStarted(Path file) {
+        currentFile = file;
+    }
+
+    public void fileHashed(long size, long nanos) {
+        files.increment();
+        bytes.add(size);
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        latencies.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+    }
+
+    public void fileFailed() {
+        errors.increment();
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        return getFiles() / elapsedSeconds();
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return getBytes() / elapsedSeconds();
+    }
+
+    @Override
+    public String getCurrentFile() {
+        Path file = currentFile;
+        return file == null ? "" : file.toString();
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = latencies.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public long getLatencyPercentile50() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long getLatencyPercentile99() {
+        return percentile(0.99);
+    }
+
+    /**
+     * Returns upper bound in microseconds of the bucket containing the percentile.
+     */
+    private long percentile(double fraction) {
+        long[] histogram = getLatencyHistogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen > 0 && seen >= fraction * total) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(1, System.nanoTime() - startTime) / 1e9;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("files: %d (%.1f/s), bytes: %d (%.1f MB/s), errors: %d, p50: %d us, p99: %d us, current: %s",
+                getFiles(), getFilesPerSecond(), getBytes(), getBytesPerSecond() / 1e6, getErrors(),
+                getLatencyPercentile50(), getLatencyPercentile99(), getCurrentFile());
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ignored) {
+            }
+        }
+    }
+}
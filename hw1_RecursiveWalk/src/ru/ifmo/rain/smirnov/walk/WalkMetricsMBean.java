@@ -0,0 +1,24 @@
+package ru.ifmo.rain.smirnov.walk;
+
+public interface WalkMetricsMBean {
+    long getFiles();
+
+    long getBytes();
+
+    long getErrors();
+
+    double getFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    String getCurrentFile();
+
+    /**
+     * Bucket {@code i} counts files hashed in {@code [2^(i-1), 2^i)} microseconds.
+     */
+    long[] getLatencyHistogram();
+
+    long getLatencyPercentile50();
+
+    long getLatencyPercentile99();
+}
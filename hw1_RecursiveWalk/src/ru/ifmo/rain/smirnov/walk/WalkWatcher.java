@@ -0,0 +1,235 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps hashes of all files under the roots up to date. Directories found by the initial walk are
+ * registered in a {@link WatchService}; created and modified files are rehashed once their events
+ * have been quiet for a while, deleted ones are dropped from the index. A directory reached by
+ * several spellings, such as two roots naming it differently, has one key serving all of them.
+ */
+class WalkWatcher implements AutoCloseable {
+    private final static long DEBOUNCE = TimeUnit.MILLISECONDS.toNanos(250);
+    private final static long MAX_DELAY = TimeUnit.SECONDS.toNanos(2);
+
+    private final HashAlgorithm algorithm;
+    private final TreeHasher treeHasher;
+    private final WalkMetrics metrics;
+    private final Path output;
+    private final WatchService service;
+    private final Map<WatchKey, Set<Path>> keys = new HashMap<>();
+    private final Set<Path> directories = new HashSet<>();
+    private final Set<Path> files = new HashSet<>();
+    private final ConcurrentNavigableMap<String, byte[]> index = new ConcurrentSkipListMap<>();
+    private final Set<Path> changed = new LinkedHashSet<>();
+    private long firstChange;
+    private long lastChange;
+
+    WalkWatcher(HashAlgorithm algorithm, TreeHasher treeHasher, WalkMetrics metrics, Path output) throws IOException {
+        this.algorithm = algorithm;
+        this.treeHasher = treeHasher;
+        this.metrics = metrics;
+        this.output = output;
+        service = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Hashes everything under the root and starts watching it. A root that is a single file
+     * is watched through its parent directory.
+     */
+    void addRoot(String root) {
+        Path path;
+        try {
+            path = Paths.get(root);
+        } catch (InvalidPathException e) {
+            System.err.println("Invalid path: " + root);
+            addFailed(root);
+            return;
+        }
+        if (Files.isRegularFile(path) && path.toAbsolutePath().getParent() != null) {
+            try {
+                register(path.toAbsolutePath().getParent(), path.getParent());
+                files.add(path);
+            } catch (IOException e) {
+                System.err.println("Error occurred during watching file \"" + path + "\", error: " + e.getMessage());
+            }
+        }
+        scan(path);
+    }
+
+    /**
+     * Processes events until the watcher is closed.
+     */
+    void run() {
+        try {
+            while (true) {
+                WatchKey key = changed.isEmpty() ? service.take() : service.poll(DEBOUNCE, TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    handle(key);
+                }
+                long now = System.nanoTime();
+                if (!changed.isEmpty() && (now - lastChange >= DEBOUNCE || now - firstChange >= MAX_DELAY)) {
+                    rehash();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Atomically replaces the output with the current index, one line per file in path order.
+     */
+    synchronized void snapshot() {
+        Path parent = output.toAbsolutePath().getParent();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+            try (ResultWriter writer = new ResultWriter(temp)) {
+                for (Map.Entry<String, byte[]> entry : index.entrySet()) {
+                    writer.write(entry.getValue(), entry.getKey());
+                }
+            }
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error occurred during writing snapshot: " + e.getMessage());
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void handle(WatchKey key) {
+        // Handling may register the directory again, adding to its spellings
+        List<Path> dirs = new ArrayList<>(keys.getOrDefault(key, Collections.emptySet()));
+        for (WatchEvent<?> event : key.pollEvents()) {
+            for (Path dir : dirs) {
+                handle(dir, event);
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+            directories.removeAll(dirs);
+        }
+    }
+
+    private void handle(Path dir, WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW) {
+            rescan(dir);
+            return;
+        }
+        Path child = dir.resolve((Path) event.context());
+        if (!directories.contains(dir) && !files.contains(child)) {
+            return;
+        }
+        if (event.kind() == ENTRY_DELETE) {
+            remove(child);
+        } else if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+            if (event.kind() == ENTRY_CREATE) {
+                scan(child);
+            }
+        } else {
+            long now = System.nanoTime();
+            if (changed.isEmpty()) {
+                firstChange = now;
+            }
+            lastChange = now;
+            changed.add(child);
+        }
+    }
+
+    private void rehash() {
+        for (Path file : changed) {
+            if (Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+                index.put(file.toString(), RecursiveFileVisitor.getFileHash(file, algorithm, treeHasher, metrics));
+            }
+        }
+        changed.clear();
+    }
+
+    /**
+     * Lost events of a directory: everything known under it is hashed again.
+     */
+    private void rescan(Path dir) {
+        if (directories.contains(dir)) {
+            remove(dir);
+            scan(dir);
+        } else {
+            for (Path file : files) {
+                if (dir.resolve(file.getFileName()).equals(file)) {
+                    remove(file);
+                    scan(file);
+                }
+            }
+        }
+    }
+
+    private void remove(Path path) {
+        String name = path.toString();
+        String prefix = name + path.getFileSystem().getSeparator();
+        index.remove(name);
+        Iterator<String> names = index.tailMap(prefix).keySet().iterator();
+        while (names.hasNext() && names.next().startsWith(prefix)) {
+            names.remove();
+        }
+        changed.removeIf(file -> file.startsWith(path));
+    }
+
+    private void scan(Path start) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    register(dir, dir);
+                    directories.add(dir);
+                    return CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    index.put(file.toString(), RecursiveFileVisitor.getFileHash(file, algorithm, treeHasher, metrics));
+                    return CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    System.err.println("Error occurred during scanning \"" + file + "\", error: " + exc.getMessage());
+                    addFailed(file.toString());
+                    return CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error occurred during scanning directory \"" + start + "\", error: " + e.getMessage());
+            addFailed(start.toString());
+        }
+    }
+
+    private void register(Path real, Path dir) throws IOException {
+        keys.computeIfAbsent(real.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), key -> new LinkedHashSet<>())
+                .add(dir == null ? Paths.get("") : dir);
+    }
+
+    private void addFailed(String name) {
+        metrics.fileFailed();
+        index.put(name, new byte[algorithm.getDigestSize()]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
@@ -0,0 +1,100 @@
+package ru.ifmo.rain.smirnov.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming xxHash64 with zero seed. Input is consumed in 32-byte stripes,
+ * bytes of an incomplete stripe are kept until the next update.
+ */
+class XxHash64Hasher implements FileHasher {
+    private final static long PRIME_1 = 0x9E3779B185EBCA87L;
+    private final static long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private final static long PRIME_3 = 0x165667B19E3779F9L;
+    private final static long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private final static long PRIME_5 = 0x27D4EB2F165667C5L;
+    private final static int STRIPE = 32;
+
+    private final ByteBuffer tail = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+    private long v1 = PRIME_1 + PRIME_2;
+    private long v2 = PRIME_2;
+    private long v3 = 0;
+    private long v4 = -PRIME_1;
+    private long length;
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        length += buffer.remaining();
+        if (tail.position() > 0) {
+            while (tail.hasRemaining() && buffer.hasRemaining()) {
+                tail.put(buffer.get());
+            }
+            if (tail.hasRemaining()) {
+                return;
+            }
+            tail.flip();
+            processStripe(tail);
+            tail.clear();
+        }
+        while (buffer.remaining() >= STRIPE) {
+            processStripe(buffer);
+        }
+        tail.put(buffer);
+    }
+
+    private void processStripe(ByteBuffer buffer) {
+        v1 = round(v1, buffer.getLong());
+        v2 = round(v2, buffer.getLong());
+        v3 = round(v3, buffer.getLong());
+        v4 = round(v4, buffer.getLong());
+    }
+
+    @Override
+    public byte[] digest() {
+        long hash;
+        if (length >= STRIPE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME_5;
+        }
+        hash += length;
+
+        ByteBuffer rest = tail.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        rest.flip();
+        while (rest.remaining() >= Long.BYTES) {
+            hash ^= round(0, rest.getLong());
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        if (rest.remaining() >= Integer.BYTES) {
+            hash ^= (rest.getInt() & 0xffff_ffffL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+        }
+        while (rest.hasRemaining()) {
+            hash ^= (rest.get() & 0xff) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+        return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME_1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME_1 + PRIME_4;
+    }
+}
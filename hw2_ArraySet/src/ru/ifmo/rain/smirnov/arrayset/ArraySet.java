@@ -1,14 +1,27 @@
 package ru.ifmo.rain.smirnov.arrayset;
 
 import java.util.*;
+import java.util.function.ToLongFunction;
 
+/**
+ * Immutable navigable set over a sorted list. Every view (subset, head and tail sets, descending
+ * set) is a range of the same list with a direction, so views of views of any depth are O(1)
+ * in memory and share the lookup structures of the set they came from.
+ */
 public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
     private final List<T> data;
+    private final int from;
+    private final int to;
+    private final boolean descending;
+    private final Comparator<? super T> order;
     private final Comparator<? super T> comparator;
+    private final EytzingerLayout<T> layout;
+    private final PiecewiseLinearIndex<T> learned;
 
     public ArraySet() {
-        data = Collections.emptyList();
-        comparator = null;
+        this(Collections.emptyList(), 0, 0, false, null, null, null);
     }
 
     public ArraySet(Collection<? extends T> other) {
@@ -16,45 +29,193 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     }
 
     public ArraySet(Collection<? extends T> other, Comparator<? super T> comp) {
+        this(other, comp, false);
+    }
+
+    /**
+     * @param readOptimized if set, lookups of this set go through a copy of it in
+     *                      {@link EytzingerLayout}, doubling the memory taken by the set
+     */
+    public ArraySet(Collection<? extends T> other, Comparator<? super T> comp, boolean readOptimized) {
+        data = sortedList(other, comp);
+        from = 0;
+        to = data.size();
+        descending = false;
+        order = comp;
         comparator = comp;
-        Set<T> tmp = new TreeSet<>(comparator);
-        tmp.addAll(other);
-        data = new ArrayList<>(tmp);
-    }
-
-    private ArraySet(List<T> other, Comparator<? super T> comp) {
-            data = other;
-            comparator = comp;
-    }
-
-    private ArraySet(ReversedListView<T> list, Comparator<? super T> comp) {
-        data = list;
+        layout = readOptimized ? new EytzingerLayout<>(data, comp) : null;
+        learned = null;
+    }
+
+    /**
+     * @param key numeric key of the elements, non-decreasing in their order. Lookups predict
+     *            the position of an element from its key and search only a few positions around
+     *            the prediction; where the prediction misses, they fall back to a full search
+     */
+    public ArraySet(Collection<? extends T> other, Comparator<? super T> comp, ToLongFunction<? super T> key) {
+        data = sortedList(other, comp);
+        from = 0;
+        to = data.size();
+        descending = false;
+        order = comp;
         comparator = comp;
+        layout = null;
+        learned = PiecewiseLinearIndex.of(data, key);
+    }
+
+    /**
+     * @param data  elements sorted by {@code order}
+     * @param order order of {@code data}, reversed for the view if {@code descending} is set
+     */
+    private ArraySet(List<T> data, int from, int to, boolean descending, Comparator<? super T> order,
+                     EytzingerLayout<T> layout, PiecewiseLinearIndex<T> learned) {
+        this.data = data;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+        this.order = order;
+        this.layout = layout;
+        this.learned = learned;
+        comparator = descending ? Collections.reverseOrder(order) : order;
+    }
+
+    /**
+     * Wraps a list known to be sorted and free of repeats, without copying it.
+     */
+    static <T> ArraySet<T> ofSorted(List<T> sorted, Comparator<? super T> comp) {
+        return new ArraySet<>(sorted, 0, sorted.size(), false, comp, null, null);
+    }
+
+    /**
+     * Sorts the elements into an array, keeping the first of equal ones like {@link TreeSet} does.
+     * A sorted set of the same order is taken as is, and sorted input costs a single pass.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> sortedList(Collection<? extends T> other, Comparator<? super T> comp) {
+        T[] elements = (T[]) other.toArray();
+        if (other instanceof SortedSet && Objects.equals(comp, ((SortedSet<?>) other).comparator())) {
+            return Arrays.asList(elements);
+        }
+        Comparator<? super T> order = comp != null ? comp : (Comparator<? super T>) Comparator.naturalOrder();
+        // Rejects a single null or incomparable element, as TreeSet does
+        if (elements.length == 1) {
+            order.compare(elements[0], elements[0]);
+        }
+        int sorted = 1;
+        while (sorted < elements.length && order.compare(elements[sorted - 1], elements[sorted]) <= 0) {
+            sorted++;
+        }
+        if (sorted < elements.length) {
+            if (elements.length >= PARALLEL_SORT_THRESHOLD) {
+                Arrays.parallelSort(elements, order);
+            } else {
+                Arrays.sort(elements, order);
+            }
+        }
+        int size = Math.min(elements.length, 1);
+        for (int i = 1; i < elements.length; i++) {
+            if (order.compare(elements[size - 1], elements[i]) != 0) {
+                elements[size++] = elements[i];
+            }
+        }
+        return Arrays.asList(size == elements.length ? elements : Arrays.copyOf(elements, size));
     }
 
     @Override
     public boolean contains(Object o) {
-        return Collections.binarySearch(data, (T) o, comparator) >= 0;
+        return search((T) o) >= 0;
     }
 
     @Override
     public T lower(T t) {
-        return getItem(lowerIndex(t));
+        return getItem(lowerPos(t));
     }
 
     @Override
     public T floor(T t) {
-        return getItem(floorIndex(t));
+        return getItem(floorPos(t));
     }
 
     @Override
     public T ceiling(T t) {
-        return getItem(ceilingIndex(t));
+        return getItem(ceilingPos(t));
     }
 
     @Override
     public T higher(T t) {
-        return getItem(higherIndex(t));
+        return getItem(higherPos(t));
+    }
+
+    /**
+     * Checks a batch of keys at once: bit {@code i} of the result is set if the {@code i}-th key
+     * is in the set. Keys sorted in the order of the set cost O(k log(n / k)) in total.
+     */
+    public BitSet containsEach(Collection<? extends T> keys) {
+        BitSet result = new BitSet(keys.size());
+        Cursor cursor = new Cursor();
+        int i = 0;
+        for (T key : keys) {
+            if (cursor.search(key) >= 0) {
+                result.set(i);
+            }
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@link #ceiling} of every key, searching sorted keys as {@link #containsEach} does.
+     */
+    public List<T> ceilingAll(Collection<? extends T> keys) {
+        List<T> result = new ArrayList<>(keys.size());
+        Cursor cursor = new Cursor();
+        for (T key : keys) {
+            int index = cursor.search(key);
+            index = index >= 0 ? index : -index - 1;
+            result.add(index < size() ? get(index) : null);
+        }
+        return result;
+    }
+
+    /**
+     * Returns elements of this set that are also in the other one. The smaller set is walked
+     * and the larger one galloped through, when both are in the same order.
+     */
+    @SuppressWarnings("unchecked")
+    public ArraySet<T> intersect(SortedSet<? extends T> other) {
+        List<T> result = new ArrayList<>();
+        if (other instanceof ArraySet && other.size() > size() && Objects.equals(comparator, other.comparator())) {
+            ArraySet<T>.Cursor cursor = ((ArraySet<T>) other).new Cursor();
+            for (T t : this) {
+                if (cursor.search(t) >= 0) {
+                    result.add(t);
+                }
+            }
+        } else {
+            Cursor cursor = new Cursor();
+            for (T t : other) {
+                int index = cursor.search(t);
+                if (index >= 0) {
+                    result.add(get(index));
+                }
+            }
+            if (!Objects.equals(comparator, other.comparator())) {
+                return new ArraySet<>(result, comparator);
+            }
+        }
+        return ofSorted(result, comparator);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsAll(Collection<?> c) {
+        Cursor cursor = new Cursor();
+        for (Object o : c) {
+            if (cursor.search((T) o) < 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -69,12 +230,27 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
 
     @Override
     public Iterator<T> iterator() {
-        return Collections.unmodifiableList(data).iterator();
+        return new Iterator<T>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+        };
     }
 
     @Override
     public NavigableSet<T> descendingSet() {
-        return new ArraySet<>(new ReversedListView<>(data), Collections.reverseOrder(comparator));
+        return new ArraySet<>(data, from, to, !descending, order, layout, learned);
     }
 
     @Override
@@ -82,27 +258,30 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
         return descendingSet().iterator();
     }
 
+    private ArraySet<T> view(int low, int high) {
+        low = Math.max(low, from);
+        high = Math.min(high, to);
+        return new ArraySet<>(data, low, Math.max(low, high), descending, order, layout, learned);
+    }
+
     @Override
     public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
-        int from = fromInclusive ? ceilingIndex(fromElement) : higherIndex(fromElement);
-        int to = toInclusive ? floorIndex(toElement) : lowerIndex(toElement);
-        if (from > to || from < 0 || to >= data.size())
-            return new ArraySet<>(Collections.emptyNavigableSet(), comparator);
-        return new ArraySet<>(data.subList(from, to + 1), comparator);
+        if (viewCompare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return headSet(toElement, toInclusive).tailSet(fromElement, fromInclusive);
     }
 
     @Override
-    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
-        if (size() == 0)
-            return emptySet();
-        return subSet(first(), true, toElement, inclusive);
+    public ArraySet<T> headSet(T toElement, boolean inclusive) {
+        int pos = inclusive ? floorPos(toElement) : lowerPos(toElement);
+        return descending ? view(pos, to) : view(from, pos + 1);
     }
 
     @Override
-    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
-        if (size() == 0)
-            return emptySet();
-        return subSet(fromElement, inclusive, last(), true);
+    public ArraySet<T> tailSet(T fromElement, boolean inclusive) {
+        int pos = inclusive ? ceilingPos(fromElement) : higherPos(fromElement);
+        return descending ? view(from, pos + 1) : view(pos, to);
     }
 
     @Override
@@ -127,20 +306,124 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
 
     @Override
     public T first() {
-        if (data.isEmpty())
+        if (isEmpty())
             throw new NoSuchElementException();
-        return data.get(0);
+        return get(0);
     }
 
     @Override
     public T last() {
-        if (data.isEmpty())
+        if (isEmpty())
             throw new NoSuchElementException();
-        return data.get(data.size() - 1);
+        return get(size() - 1);
+    }
+
+    /**
+     * Element at the given index of the iteration order.
+     */
+    private T get(int index) {
+        return descending ? data.get(to - 1 - index) : data.get(from + index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(T a, T b) {
+        return order == null ? ((Comparable<? super T>) a).compareTo(b) : order.compare(a, b);
+    }
+
+    private int viewCompare(T a, T b) {
+        return descending ? compare(b, a) : compare(a, b);
+    }
+
+    /**
+     * Position of the previous key, from which the next one is looked for by exponential steps
+     * and a binary search within the last step. A key less than the previous one starts over.
+     */
+    private class Cursor {
+        private int start;
+        private T previous;
+
+        int search(T key) {
+            if (start > 0 && viewCompare(previous, key) > 0) {
+                start = 0;
+            }
+            previous = key;
+            int lo = start;
+            int hi = start;
+            int step = 1;
+            while (hi < size() && viewCompare(get(hi), key) < 0) {
+                lo = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            hi = Math.min(hi, size() - 1);
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = viewCompare(get(mid), key);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    start = mid;
+                    return mid;
+                }
+            }
+            start = lo;
+            return -(lo + 1);
+        }
+    }
+
+    /**
+     * Binary search in {@code data[from, to)}, with the contract of
+     * {@link Collections#binarySearch(List, Object, Comparator)} over positions of {@code data}.
+     */
+    private int search(T t) {
+        if (layout != null) {
+            int pos = layout.search(t);
+            int insertion = pos >= 0 ? pos : -pos - 1;
+            if (insertion < from) {
+                return -from - 1;
+            }
+            if (insertion >= to) {
+                return -to - 1;
+            }
+            return pos;
+        }
+        if (learned != null) {
+            int guess = learned.predict(t);
+            int low = Math.min(Math.max(guess - PiecewiseLinearIndex.WINDOW, from), to);
+            int high = Math.max(Math.min(guess + PiecewiseLinearIndex.WINDOW + 1, to), low);
+            int pos = search(t, low, high);
+            int insertion = pos >= 0 ? pos : -pos - 1;
+            // An insertion point on an edge of the window, but not of the range, is not proven
+            if (pos >= 0 || (insertion > low || low == from) && (insertion < high || high == to)) {
+                return pos;
+            }
+        }
+        return search(t, from, to);
+    }
+
+    /**
+     * Binary search in {@code data[low, high)}.
+     */
+    private int search(T t, int low, int high) {
+        high--;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(data.get(mid), t);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
     }
 
     private int getItemIndex(T t, int wasFound, int wasNotFound) {
-        int pos = Collections.binarySearch(data, t, comparator);
+        int pos = search(t);
         if (pos < 0) {
             pos = -pos - 1;
             return pos + wasNotFound;
@@ -148,36 +431,32 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
         return pos + wasFound;
     }
 
-    private boolean isCorrectIndex(int ind) {
-        return 0 <= ind && ind < data.size();
-    }
-
-    private T getItem(int ind) {
-        return isCorrectIndex(ind) ? data.get(ind) : null;
+    private boolean isCorrectPos(int pos) {
+        return from <= pos && pos < to;
     }
 
-    private int lowerIndex(T t) {
-        return getItemIndex(t, -1, -1);
+    private T getItem(int pos) {
+        return isCorrectPos(pos) ? data.get(pos) : null;
     }
 
-    private int floorIndex(T t) {
-        return getItemIndex(t, 0, -1);
+    private int lowerPos(T t) {
+        return descending ? getItemIndex(t, 1, 0) : getItemIndex(t, -1, -1);
     }
 
-    private int ceilingIndex(T t) {
-        return getItemIndex(t, 0, 0);
+    private int floorPos(T t) {
+        return descending ? getItemIndex(t, 0, 0) : getItemIndex(t, 0, -1);
     }
 
-    private int higherIndex(T t) {
-        return getItemIndex(t, 1, 0);
+    private int ceilingPos(T t) {
+        return descending ? getItemIndex(t, 0, -1) : getItemIndex(t, 0, 0);
     }
 
-    private NavigableSet<T> emptySet() {
-        return new ArraySet<>(Collections.emptyNavigableSet(), comparator);
+    private int higherPos(T t) {
+        return descending ? getItemIndex(t, -1, -1) : getItemIndex(t, 1, 0);
     }
 
     @Override
     public int size() {
-        return data.size();
+        return to - from;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,111 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SortedSet;
+
+/**
+ * Compact stream format of {@link ArraySet}: a header {@code magic, flags, count} followed by
+ * the keys in set order. Keys of varying width are written as a length and the bytes; with
+ * prefix compression a key stores only the length of the prefix it shares with the previous
+ * key and the rest of its bytes, which is what sorted strings mostly consist of.
+ * <p>
+ * Loading trusts the stored order and fills the backing array directly.
+ */
+public final class ArraySetFormat {
+    private final static int MAGIC = 0x41535331;
+    private final static int PREFIX_COMPRESSED = 1;
+
+    private ArraySetFormat() {
+    }
+
+    public static <T> void write(OutputStream stream, SortedSet<T> set, KeyCodec<? super T> codec, boolean prefixCompression) throws IOException {
+        boolean compressed = prefixCompression && codec.width() == 0;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(compressed ? PREFIX_COMPRESSED : 0);
+        out.writeInt(set.size());
+        byte[] previous = new byte[0];
+        for (T t : set) {
+            byte[] bytes = codec.encode(t);
+            if (codec.width() > 0) {
+                if (bytes.length != codec.width()) {
+                    throw new IllegalArgumentException("Key of " + bytes.length + " bytes for codec of width " + codec.width());
+                }
+                out.write(bytes);
+            } else if (compressed) {
+                int shared = Arrays.mismatch(previous, bytes);
+                shared = shared < 0 ? bytes.length : Math.min(shared, bytes.length);
+                writeVarInt(out, shared);
+                writeVarInt(out, bytes.length - shared);
+                out.write(bytes, shared, bytes.length - shared);
+                previous = bytes;
+            } else {
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a set written by {@link #write}. The comparator should be the one of the written set.
+     * The stream is read ahead, so nothing after the set can be read from it.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ArraySet<T> read(InputStream stream, KeyCodec<T> codec, Comparator<? super T> comp) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an array set stream");
+        }
+        boolean compressed = (in.readInt() & PREFIX_COMPRESSED) != 0;
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Negative set size: " + count);
+        }
+        T[] elements = (T[]) new Object[count];
+        byte[] buffer = new byte[Math.max(codec.width(), 64)];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            if (codec.width() > 0) {
+                length = codec.width();
+                in.readFully(buffer, 0, length);
+            } else {
+                int shared = compressed ? readVarInt(in) : 0;
+                int rest = readVarInt(in);
+                if (shared > length || rest < 0) {
+                    throw new IOException("Corrupted key " + i);
+                }
+                length = shared + rest;
+                if (length > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(length, 2 * buffer.length));
+                }
+                in.readFully(buffer, shared, rest);
+            }
+            elements[i] = codec.decode(ByteBuffer.wrap(buffer), 0, length);
+        }
+        return ArraySet.ofSorted(Arrays.asList(elements), comp);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed length");
+    }
+}
@@ -0,0 +1,156 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared holder of immutable {@link ArraySet} snapshots. Readers take the current snapshot with
+ * a single volatile read and may run any number of queries on it; writers queue changes, which
+ * are merged into a new snapshot in the background and published with a new version.
+ */
+public class ConcurrentArraySet<T> {
+    private final Comparator<? super T> comparator;
+    private final Executor executor;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final Object lock = new Object();
+    private final Object rebuildLock = new Object();
+    private volatile Snapshot<T> current;
+    private Map<T, Boolean> pending;
+
+    /**
+     * Immutable set together with the number of rebuilds that produced it.
+     */
+    public static class Snapshot<T> {
+        private final ArraySet<T> set;
+        private final long version;
+
+        private Snapshot(ArraySet<T> set, long version) {
+            this.set = set;
+            this.version = version;
+        }
+
+        public ArraySet<T> getSet() {
+            return set;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * @param executor runs rebuilds; {@code Runnable::run} rebuilds in the writing thread
+     */
+    public ConcurrentArraySet(Collection<? extends T> elements, Comparator<? super T> comp, Executor executor) {
+        comparator = comp;
+        this.executor = executor;
+        current = new Snapshot<>(new ArraySet<>(elements, comp), 0);
+        pending = new TreeMap<>(comp);
+    }
+
+    /**
+     * Returns the latest snapshot. Queries on it stay consistent whatever happens later.
+     */
+    public Snapshot<T> snapshot() {
+        return current;
+    }
+
+    public ArraySet<T> get() {
+        return current.set;
+    }
+
+    public long getVersion() {
+        return current.version;
+    }
+
+    public void add(T t) {
+        change(t, Boolean.TRUE);
+    }
+
+    public void remove(T t) {
+        change(t, Boolean.FALSE);
+    }
+
+    private void change(T t, Boolean added) {
+        synchronized (lock) {
+            pending.put(t, added);
+        }
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            executor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Replaces the content; changes queued before are dropped.
+     */
+    public void replace(Collection<? extends T> elements) {
+        ArraySet<T> set = new ArraySet<>(elements, comparator);
+        synchronized (lock) {
+            pending = new TreeMap<>(comparator);
+            current = new Snapshot<>(set, current.version + 1);
+        }
+    }
+
+    /**
+     * Merges queued changes into a new snapshot right away.
+     */
+    public void flush() {
+        rebuild();
+    }
+
+    private void rebuild() {
+        synchronized (rebuildLock) {
+            rebuildScheduled.set(false);
+            Map<T, Boolean> changes;
+            Snapshot<T> base;
+            synchronized (lock) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                changes = pending;
+                pending = new TreeMap<>(comparator);
+                base = current;
+            }
+            ArraySet<T> set = merge(base.set, changes);
+            synchronized (lock) {
+                // Changes taken before a replace() are dropped with it
+                if (current == base) {
+                    current = new Snapshot<>(set, base.version + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges a sorted set with sorted changes. The place of every change is found by a lookup,
+     * so the cost is a pass over the set plus O(log n) per change.
+     */
+    private ArraySet<T> merge(ArraySet<T> set, Map<T, Boolean> changes) {
+        List<T> merged = new ArrayList<>(set.size() + changes.size());
+        Iterator<T> elements = set.iterator();
+        int index = 0;
+        for (Map.Entry<T, Boolean> change : changes.entrySet()) {
+            T key = change.getKey();
+            int end = set.headSet(key, false).size();
+            while (index < end) {
+                merged.add(elements.next());
+                index++;
+            }
+            // An element already present is kept, as adding it to a TreeSet would
+            if (index < set.size() && set.contains(key)) {
+                T element = elements.next();
+                index++;
+                if (change.getValue()) {
+                    merged.add(element);
+                }
+            } else if (change.getValue()) {
+                merged.add(key);
+            }
+        }
+        while (elements.hasNext()) {
+            merged.add(elements.next());
+        }
+        return ArraySet.ofSorted(merged, comparator);
+    }
+}
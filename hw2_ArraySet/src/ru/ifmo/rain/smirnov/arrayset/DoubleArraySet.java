@@ -0,0 +1,170 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.util.*;
+
+/**
+ * {@link ArraySet} of {@code double} keys kept in a sorted primitive array.
+ * Views share the array and differ only in bounds and direction. Without a comparator
+ * (or with {@link Comparator#naturalOrder()}) probes compare primitives and never box;
+ * the order is that of {@link Double#compare}, so {@code -0.0} and {@code 0.0} are distinct keys.
+ */
+public class DoubleArraySet extends PrimitiveArraySet<Double, DoubleArraySet> {
+    private final double[] data;
+
+    public DoubleArraySet() {
+        this(new double[0], 0, 0, false, null);
+    }
+
+    public DoubleArraySet(Collection<? extends Double> other) {
+        this(other, null);
+    }
+
+    public DoubleArraySet(Collection<? extends Double> other, Comparator<? super Double> comp) {
+        this(sort(other.stream().mapToDouble(Double::doubleValue).toArray(), comp), comp);
+    }
+
+    public DoubleArraySet(double[] keys) {
+        this(sort(keys.clone(), null), null);
+    }
+
+    private DoubleArraySet(double[] sorted, Comparator<? super Double> comp) {
+        this(sorted, 0, sorted.length, false, comp);
+    }
+
+    private DoubleArraySet(double[] data, int from, int to, boolean descending, Comparator<? super Double> order) {
+        super(from, to, descending, order);
+        this.data = data;
+    }
+
+    /**
+     * Sorts keys in place and drops repeated ones, keeping the first of equal keys like {@link TreeSet}.
+     */
+    private static double[] sort(double[] keys, Comparator<? super Double> comp) {
+        int size = 0;
+        if (isNatural(comp)) {
+            Arrays.sort(keys);
+            for (double key : keys) {
+                if (size == 0 || Double.compare(keys[size - 1], key) != 0) {
+                    keys[size++] = key;
+                }
+            }
+        } else {
+            Double[] boxed = Arrays.stream(keys).boxed().toArray(Double[]::new);
+            Arrays.sort(boxed, comp);
+            for (Double key : boxed) {
+                if (size == 0 || comp.compare(keys[size - 1], key) != 0) {
+                    keys[size++] = key;
+                }
+            }
+        }
+        return size == keys.length ? keys : Arrays.copyOf(keys, size);
+    }
+
+    private int search(double key) {
+        if (isNatural(order)) {
+            return Arrays.binarySearch(data, from, to, key);
+        }
+        return search(mid -> order.compare(data[mid], key));
+    }
+
+    @Override
+    int search(Double key) {
+        return search((double) key);
+    }
+
+    @Override
+    Double getItem(int pos) {
+        return data[pos];
+    }
+
+    @Override
+    DoubleArraySet view(int from, int to, boolean descending) {
+        return new DoubleArraySet(data, from, to, descending, order);
+    }
+
+    public boolean contains(double key) {
+        return search(key) >= 0;
+    }
+
+    /**
+     * Returns the key at the given position of this set's iteration order.
+     */
+    public double getDouble(int index) {
+        return data[toPos(index)];
+    }
+
+    public double firstDouble() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getDouble(0);
+    }
+
+    public double lastDouble() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getDouble(size() - 1);
+    }
+
+    /**
+     * Position of the greatest key less than the given one, or {@code -1}.
+     */
+    public int lowerIndex(double key) {
+        return toIndex(lowerPos(search(key)));
+    }
+
+    public int floorIndex(double key) {
+        return toIndex(floorPos(search(key)));
+    }
+
+    public int ceilingIndex(double key) {
+        return toIndex(ceilingPos(search(key)));
+    }
+
+    public int higherIndex(double key) {
+        return toIndex(higherPos(search(key)));
+    }
+
+    public double[] toDoubleArray() {
+        double[] result = Arrays.copyOfRange(data, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                double tmp = result[i];
+                result[i] = result[j];
+                result[j] = tmp;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Double && contains((double) (Double) o);
+    }
+
+    @Override
+    public PrimitiveIterator.OfDouble iterator() {
+        return new PrimitiveIterator.OfDouble() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public double nextDouble() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getDouble(index++);
+            }
+        };
+    }
+
+    @Override
+    public PrimitiveIterator.OfDouble descendingIterator() {
+        return descendingSet().iterator();
+    }
+}
@@ -0,0 +1,58 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Copy of a sorted list in Eytzinger (breadth-first) order: children of node {@code k} are
+ * {@code 2k} and {@code 2k + 1}, so the first levels of every search share a few cache lines
+ * and the next nodes to probe lie next to each other.
+ */
+class EytzingerLayout<T> {
+    private final Object[] tree;
+    private final int[] rank;
+    private final Comparator<? super T> comparator;
+
+    EytzingerLayout(List<T> sorted, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        tree = new Object[sorted.size() + 1];
+        rank = new int[sorted.size() + 1];
+        build(sorted.toArray(), 0, 1);
+    }
+
+    private int build(Object[] sorted, int i, int k) {
+        if (k < tree.length) {
+            i = build(sorted, i, 2 * k);
+            tree[k] = sorted[i];
+            rank[k] = i++;
+            i = build(sorted, i, 2 * k + 1);
+        }
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, T b) {
+        return comparator == null ? ((Comparable<? super T>) a).compareTo(b) : comparator.compare((T) a, b);
+    }
+
+    /**
+     * Same contract as {@link java.util.Collections#binarySearch(List, Object, Comparator)}.
+     */
+    int search(T key) {
+        int k = 1;
+        while (k < tree.length) {
+            // A plain branch: speculation runs ahead into the next levels, which lie together
+            if (compare(tree[k], key) < 0) {
+                k = 2 * k + 1;
+            } else {
+                k = 2 * k;
+            }
+        }
+        // Climb back over the right turns taken after the last left one
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+        if (k == 0) {
+            return -(tree.length - 1) - 1;
+        }
+        return compare(tree[k], key) == 0 ? rank[k] : -rank[k] - 1;
+    }
+}
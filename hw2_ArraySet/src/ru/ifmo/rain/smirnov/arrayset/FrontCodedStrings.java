@@ -0,0 +1,211 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Sorted strings front coded in blocks of a single byte array. The first string of a block is
+ * stored in full, every other one as the length of the prefix it shares with the previous
+ * string and the rest of its bytes.
+ * <p>
+ * Every {@code char} is encoded as in UTF-8 (surrogates one by one), so that unsigned
+ * comparison of the bytes gives the order of {@link String#compareTo} and the encoding of a
+ * prefix of a string is a prefix of the encoding of the string.
+ */
+class FrontCodedStrings {
+    final static int BLOCK = 16;
+
+    private final byte[] bytes;
+    private final int[] blocks;
+    private final int size;
+    private final int maxLength;
+
+    /**
+     * @param sorted strings in ascending order without repeats
+     */
+    FrontCodedStrings(String[] sorted) {
+        size = sorted.length;
+        blocks = new int[(size + BLOCK - 1) / BLOCK];
+        byte[] bytes = new byte[64];
+        int length = 0;
+        int maxLength = 0;
+        byte[] previous = new byte[0];
+        for (int i = 0; i < size; i++) {
+            byte[] current = encode(sorted[i]);
+            maxLength = Math.max(maxLength, current.length);
+            int shared = 0;
+            if (i % BLOCK == 0) {
+                blocks[i / BLOCK] = length;
+            } else {
+                shared = Arrays.mismatch(previous, current);
+                shared = shared < 0 ? current.length : Math.min(shared, current.length);
+            }
+            if (length + current.length - shared + 2 * 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + current.length + 2 * 5));
+            }
+            if (i % BLOCK != 0) {
+                length = writeVarInt(bytes, length, shared);
+            }
+            length = writeVarInt(bytes, length, current.length - shared);
+            System.arraycopy(current, shared, bytes, length, current.length - shared);
+            length += current.length - shared;
+            previous = current;
+        }
+        this.bytes = Arrays.copyOf(bytes, length);
+        this.maxLength = maxLength;
+    }
+
+    static byte[] encode(String s) {
+        byte[] result = new byte[3 * s.length()];
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                result[length++] = (byte) c;
+            } else if (c < 0x800) {
+                result[length++] = (byte) (0xc0 | c >> 6);
+                result[length++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                result[length++] = (byte) (0xe0 | c >> 12);
+                result[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                result[length++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return length == result.length ? result : Arrays.copyOf(result, length);
+    }
+
+    private static String decode(byte[] buffer, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            int b = buffer[i] & 0xff;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if (b < 0xe0) {
+                chars[count++] = (char) ((b & 0x1f) << 6 | buffer[++i] & 0x3f);
+                ascii = false;
+            } else {
+                chars[count++] = (char) ((b & 0x0f) << 12 | (buffer[++i] & 0x3f) << 6 | buffer[++i] & 0x3f);
+                ascii = false;
+            }
+        }
+        return ascii ? new String(buffer, 0, length, StandardCharsets.ISO_8859_1) : new String(chars, 0, count);
+    }
+
+    private static int writeVarInt(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[offset++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    private int readVarInt(int offset) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[offset++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int varIntSize(int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * Reads a string at the given offset into the buffer, which holds the previous string.
+     * Returns the offset of the next string and stores the length of this one to {@code length[0]}.
+     */
+    private int next(int offset, boolean head, byte[] buffer, int[] length) {
+        int shared = 0;
+        if (!head) {
+            shared = readVarInt(offset);
+            offset += varIntSize(shared);
+        }
+        int rest = readVarInt(offset);
+        offset += varIntSize(rest);
+        System.arraycopy(bytes, offset, buffer, shared, rest);
+        length[0] = shared + rest;
+        return offset + rest;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String get(int index) {
+        byte[] buffer = new byte[maxLength];
+        int[] length = new int[1];
+        int offset = blocks[index / BLOCK];
+        for (int i = index / BLOCK * BLOCK; i <= index; i++) {
+            offset = next(offset, i % BLOCK == 0, buffer, length);
+        }
+        return decode(buffer, length[0]);
+    }
+
+    /**
+     * Decodes all strings of a block.
+     */
+    String[] block(int block) {
+        byte[] buffer = new byte[maxLength];
+        int[] length = new int[1];
+        String[] result = new String[Math.min(BLOCK, size - block * BLOCK)];
+        int offset = blocks[block];
+        for (int i = 0; i < result.length; i++) {
+            offset = next(offset, i == 0, buffer, length);
+            result[i] = decode(buffer, length[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Searches for an encoded key with the contract of {@link Arrays#binarySearch(Object[], Object)}:
+     * a binary search over the block heads, then a scan of one block.
+     */
+    int search(byte[] key) {
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareHead(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid * BLOCK;
+            }
+        }
+        // The key lies in block high, after its head
+        if (high < 0) {
+            return -1;
+        }
+        byte[] buffer = new byte[maxLength];
+        int[] length = new int[1];
+        int offset = next(blocks[high], true, buffer, length);
+        int end = Math.min(size, (high + 1) * BLOCK);
+        for (int i = high * BLOCK + 1; i < end; i++) {
+            offset = next(offset, false, buffer, length);
+            int cmp = Arrays.compareUnsigned(buffer, 0, length[0], key, 0, key.length);
+            if (cmp == 0) {
+                return i;
+            }
+            if (cmp > 0) {
+                return -i - 1;
+            }
+        }
+        return -end - 1;
+    }
+
+    private int compareHead(int block, byte[] key) {
+        int offset = blocks[block];
+        int length = readVarInt(offset);
+        offset += varIntSize(length);
+        return Arrays.compareUnsigned(bytes, offset, offset + length, key, 0, key.length);
+    }
+}
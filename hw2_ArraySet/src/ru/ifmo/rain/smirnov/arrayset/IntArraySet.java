@@ -0,0 +1,169 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.util.*;
+
+/**
+ * {@link ArraySet} of {@code int} keys kept in a sorted primitive array.
+ * Views share the array and differ only in bounds and direction. Without a comparator
+ * (or with {@link Comparator#naturalOrder()}) probes compare primitives and never box.
+ */
+public class IntArraySet extends PrimitiveArraySet<Integer, IntArraySet> {
+    private final int[] data;
+
+    public IntArraySet() {
+        this(new int[0], 0, 0, false, null);
+    }
+
+    public IntArraySet(Collection<? extends Integer> other) {
+        this(other, null);
+    }
+
+    public IntArraySet(Collection<? extends Integer> other, Comparator<? super Integer> comp) {
+        this(sort(other.stream().mapToInt(Integer::intValue).toArray(), comp), comp);
+    }
+
+    public IntArraySet(int[] keys) {
+        this(sort(keys.clone(), null), null);
+    }
+
+    private IntArraySet(int[] sorted, Comparator<? super Integer> comp) {
+        this(sorted, 0, sorted.length, false, comp);
+    }
+
+    private IntArraySet(int[] data, int from, int to, boolean descending, Comparator<? super Integer> order) {
+        super(from, to, descending, order);
+        this.data = data;
+    }
+
+    /**
+     * Sorts keys in place and drops repeated ones, keeping the first of equal keys like {@link TreeSet}.
+     */
+    private static int[] sort(int[] keys, Comparator<? super Integer> comp) {
+        int size = 0;
+        if (isNatural(comp)) {
+            Arrays.sort(keys);
+            for (int key : keys) {
+                if (size == 0 || keys[size - 1] != key) {
+                    keys[size++] = key;
+                }
+            }
+        } else {
+            Integer[] boxed = Arrays.stream(keys).boxed().toArray(Integer[]::new);
+            Arrays.sort(boxed, comp);
+            for (Integer key : boxed) {
+                if (size == 0 || comp.compare(keys[size - 1], key) != 0) {
+                    keys[size++] = key;
+                }
+            }
+        }
+        return size == keys.length ? keys : Arrays.copyOf(keys, size);
+    }
+
+    private int search(int key) {
+        if (isNatural(order)) {
+            return Arrays.binarySearch(data, from, to, key);
+        }
+        return search(mid -> order.compare(data[mid], key));
+    }
+
+    @Override
+    int search(Integer key) {
+        return search((int) key);
+    }
+
+    @Override
+    Integer getItem(int pos) {
+        return data[pos];
+    }
+
+    @Override
+    IntArraySet view(int from, int to, boolean descending) {
+        return new IntArraySet(data, from, to, descending, order);
+    }
+
+    public boolean contains(int key) {
+        return search(key) >= 0;
+    }
+
+    /**
+     * Returns the key at the given position of this set's iteration order.
+     */
+    public int getInt(int index) {
+        return data[toPos(index)];
+    }
+
+    public int firstInt() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getInt(0);
+    }
+
+    public int lastInt() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getInt(size() - 1);
+    }
+
+    /**
+     * Position of the greatest key less than the given one, or {@code -1}.
+     */
+    public int lowerIndex(int key) {
+        return toIndex(lowerPos(search(key)));
+    }
+
+    public int floorIndex(int key) {
+        return toIndex(floorPos(search(key)));
+    }
+
+    public int ceilingIndex(int key) {
+        return toIndex(ceilingPos(search(key)));
+    }
+
+    public int higherIndex(int key) {
+        return toIndex(higherPos(search(key)));
+    }
+
+    public int[] toIntArray() {
+        int[] result = Arrays.copyOfRange(data, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                int tmp = result[i];
+                result[i] = result[j];
+                result[j] = tmp;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains((int) (Integer) o);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getInt(index++);
+            }
+        };
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return descendingSet().iterator();
+    }
+}
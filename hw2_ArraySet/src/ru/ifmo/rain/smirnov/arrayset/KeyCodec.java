@@ -0,0 +1,74 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary form of set elements stored outside of the heap.
+ */
+public interface KeyCodec<T> {
+    /**
+     * Length of every encoded key, or {@code 0} if keys differ in length.
+     */
+    int width();
+
+    byte[] encode(T key);
+
+    /**
+     * Reads a key from {@code length} bytes of the buffer starting at absolute {@code offset}.
+     */
+    T decode(ByteBuffer buffer, int offset, int length);
+
+    KeyCodec<Integer> INT = new KeyCodec<>() {
+        @Override
+        public int width() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public byte[] encode(Integer key) {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(key).array();
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getInt(offset);
+        }
+    };
+
+    KeyCodec<Long> LONG = new KeyCodec<>() {
+        @Override
+        public int width() {
+            return Long.BYTES;
+        }
+
+        @Override
+        public byte[] encode(Long key) {
+            return ByteBuffer.allocate(Long.BYTES).putLong(key).array();
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getLong(offset);
+        }
+    };
+
+    KeyCodec<String> STRING = new KeyCodec<>() {
+        @Override
+        public int width() {
+            return 0;
+        }
+
+        @Override
+        public byte[] encode(String key) {
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer, int offset, int length) {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().position(offset).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+}
@@ -0,0 +1,196 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.util.*;
+
+/**
+ * {@link ArraySet} of {@code long} keys kept in a sorted primitive array.
+ * Views share the array and differ only in bounds and direction. Without a comparator
+ * (or with {@link Comparator#naturalOrder()}) probes compare primitives and never box.
+ */
+public class LongArraySet extends PrimitiveArraySet<Long, LongArraySet> {
+    private final long[] data;
+    private final PiecewiseLinearIndex<Long> learned;
+
+    public LongArraySet() {
+        this(new long[0], 0, 0, false, null, null);
+    }
+
+    public LongArraySet(Collection<? extends Long> other) {
+        this(other, null);
+    }
+
+    public LongArraySet(Collection<? extends Long> other, Comparator<? super Long> comp) {
+        this(sort(other.stream().mapToLong(Long::longValue).toArray(), comp), comp);
+    }
+
+    public LongArraySet(long[] keys) {
+        this(keys, false);
+    }
+
+    /**
+     * @param learnedIndex if set, lookups predict the position of a key by a piecewise linear
+     *                     model of the keys and search only a few positions around it, which suits
+     *                     evenly spread keys such as timestamps
+     */
+    public LongArraySet(long[] keys, boolean learnedIndex) {
+        this(sort(keys.clone(), null), null, learnedIndex);
+    }
+
+    private LongArraySet(long[] sorted, Comparator<? super Long> comp) {
+        this(sorted, comp, false);
+    }
+
+    private LongArraySet(long[] sorted, Comparator<? super Long> comp, boolean learnedIndex) {
+        this(sorted, 0, sorted.length, false, comp, learnedIndex ? new PiecewiseLinearIndex<>(sorted, null) : null);
+    }
+
+    private LongArraySet(long[] data, int from, int to, boolean descending, Comparator<? super Long> order,
+                         PiecewiseLinearIndex<Long> learned) {
+        super(from, to, descending, order);
+        this.data = data;
+        this.learned = learned;
+    }
+
+    /**
+     * Sorts keys in place and drops repeated ones, keeping the first of equal keys like {@link TreeSet}.
+     */
+    private static long[] sort(long[] keys, Comparator<? super Long> comp) {
+        int size = 0;
+        if (isNatural(comp)) {
+            Arrays.sort(keys);
+            for (long key : keys) {
+                if (size == 0 || keys[size - 1] != key) {
+                    keys[size++] = key;
+                }
+            }
+        } else {
+            Long[] boxed = Arrays.stream(keys).boxed().toArray(Long[]::new);
+            Arrays.sort(boxed, comp);
+            for (Long key : boxed) {
+                if (size == 0 || comp.compare(keys[size - 1], key) != 0) {
+                    keys[size++] = key;
+                }
+            }
+        }
+        return size == keys.length ? keys : Arrays.copyOf(keys, size);
+    }
+
+    private int search(long key) {
+        if (learned != null) {
+            int guess = learned.predict(key);
+            int low = Math.min(Math.max(guess - PiecewiseLinearIndex.WINDOW, from), to);
+            int high = Math.max(Math.min(guess + PiecewiseLinearIndex.WINDOW + 1, to), low);
+            int pos = Arrays.binarySearch(data, low, high, key);
+            int insertion = pos >= 0 ? pos : -pos - 1;
+            // An insertion point on an edge of the window, but not of the range, is not proven
+            if (pos >= 0 || (insertion > low || low == from) && (insertion < high || high == to)) {
+                return pos;
+            }
+        }
+        if (isNatural(order)) {
+            return Arrays.binarySearch(data, from, to, key);
+        }
+        return search(mid -> order.compare(data[mid], key));
+    }
+
+    @Override
+    int search(Long key) {
+        return search((long) key);
+    }
+
+    @Override
+    Long getItem(int pos) {
+        return data[pos];
+    }
+
+    @Override
+    LongArraySet view(int from, int to, boolean descending) {
+        return new LongArraySet(data, from, to, descending, order, learned);
+    }
+
+    public boolean contains(long key) {
+        return search(key) >= 0;
+    }
+
+    /**
+     * Returns the key at the given position of this set's iteration order.
+     */
+    public long getLong(int index) {
+        return data[toPos(index)];
+    }
+
+    public long firstLong() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getLong(0);
+    }
+
+    public long lastLong() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getLong(size() - 1);
+    }
+
+    /**
+     * Position of the greatest key less than the given one, or {@code -1}.
+     */
+    public int lowerIndex(long key) {
+        return toIndex(lowerPos(search(key)));
+    }
+
+    public int floorIndex(long key) {
+        return toIndex(floorPos(search(key)));
+    }
+
+    public int ceilingIndex(long key) {
+        return toIndex(ceilingPos(search(key)));
+    }
+
+    public int higherIndex(long key) {
+        return toIndex(higherPos(search(key)));
+    }
+
+    public long[] toLongArray() {
+        long[] result = Arrays.copyOfRange(data, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                long tmp = result[i];
+                result[i] = result[j];
+                result[j] = tmp;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains((long) (Long) o);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getLong(index++);
+            }
+        };
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return descendingSet().iterator();
+    }
+}
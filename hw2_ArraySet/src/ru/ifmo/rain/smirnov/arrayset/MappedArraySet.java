@@ -0,0 +1,84 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.SortedSet;
+
+/**
+ * {@link ArraySet} over a memory-mapped file of sorted records. Opening maps the file without
+ * reading it, elements are decoded on access, and the pages are shared by all processes
+ * mapping the same file.
+ * <p>
+ * The file is a header {@code magic, width, count} followed by the encoded records and,
+ * for keys of varying width, a table of {@code count + 1} record offsets.
+ */
+public final class MappedArraySet {
+    private final static int MAGIC = 0x41534554;
+    private final static int HEADER = 2 * Integer.BYTES + Long.BYTES;
+
+    private MappedArraySet() {
+    }
+
+    /**
+     * Writes elements of the set in its order.
+     */
+    public static <T> void write(Path file, SortedSet<T> set, KeyCodec<? super T> codec) throws IOException {
+        int width = codec.width();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(width);
+            out.writeLong(set.size());
+            long[] offsets = new long[width > 0 ? 0 : set.size() + 1];
+            long offset = 0;
+            int i = 0;
+            for (T t : set) {
+                byte[] bytes = codec.encode(t);
+                if (width > 0 && bytes.length != width) {
+                    throw new IllegalArgumentException("Key of " + bytes.length + " bytes for codec of width " + width);
+                }
+                if (width == 0) {
+                    offsets[i++] = offset;
+                }
+                out.write(bytes);
+                offset += bytes.length;
+            }
+            if (width == 0) {
+                offsets[i] = offset;
+                for (long o : offsets) {
+                    out.writeLong(o);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #write}. The comparator should be the one of the written set.
+     */
+    public static <T> ArraySet<T> open(Path file, KeyCodec<T> codec, Comparator<? super T> comp) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Not a set file: " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a set file: " + file);
+            }
+            int width = header.getInt();
+            long count = header.getLong();
+            if (width != codec.width() || count < 0 || count >= Integer.MAX_VALUE) {
+                throw new IOException("Set file " + file + " does not match the codec");
+            }
+            return ArraySet.ofSorted(new MappedRecords<>(channel, HEADER, (int) count, codec), comp);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of records of a mapped file, decoded on every access.
+ * Fixed-width records are located by their index, variable-width ones through
+ * a table of {@code count + 1} offsets at the end of the file.
+ */
+class MappedRecords<T> extends AbstractList<T> implements RandomAccess {
+    private final static long WINDOW = 1L << 30;
+    private final static int OVERLAP = Long.BYTES;
+
+    private final MappedByteBuffer[] windows;
+    private final KeyCodec<T> codec;
+    private final long start;
+    private final long offsets;
+    private final int count;
+
+    MappedRecords(FileChannel channel, long start, int count, KeyCodec<T> codec) throws IOException {
+        long size = channel.size();
+        this.start = start;
+        this.count = count;
+        this.codec = codec;
+        offsets = codec.width() > 0 ? -1 : size - (long) (count + 1) * Long.BYTES;
+        windows = new MappedByteBuffer[(int) ((size + WINDOW - 1) / WINDOW)];
+        for (int i = 0; i < windows.length; i++) {
+            long position = i * WINDOW;
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, WINDOW + OVERLAP));
+        }
+    }
+
+    private long readLong(long position) {
+        return windows[(int) (position / WINDOW)].getLong((int) (position % WINDOW));
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        long from;
+        long to;
+        if (codec.width() > 0) {
+            from = start + (long) index * codec.width();
+            to = from + codec.width();
+        } else {
+            from = start + readLong(offsets + (long) index * Long.BYTES);
+            to = start + readLong(offsets + (long) (index + 1) * Long.BYTES);
+        }
+        int length = (int) (to - from);
+        int window = (int) (from / WINDOW);
+        int offset = (int) (from % WINDOW);
+        if (offset + length <= windows[window].limit()) {
+            return codec.decode(windows[window], offset, length);
+        }
+        // The record crosses the end of a window
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            long position = from + i;
+            bytes[i] = windows[(int) (position / WINDOW)].get((int) (position % WINDOW));
+        }
+        return codec.decode(ByteBuffer.wrap(bytes), 0, length);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+}
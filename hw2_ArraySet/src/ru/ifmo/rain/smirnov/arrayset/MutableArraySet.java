@@ -0,0 +1,625 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.util.*;
+
+/**
+ * Mutable navigable set over an immutable sorted base and a small delta: a bit set of removed
+ * base positions and a sorted set of inserted elements. Once the delta outgrows a fraction of
+ * the base, both are merged into a new base in one linear pass, so an update costs amortized
+ * O(log n). Runs of removed base elements are skipped a word of the bit set at a time.
+ * Views are backed by the set: they navigate it within their bounds and take no copying.
+ */
+public class MutableArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private static final int MIN_DELTA = 1 << 10;
+    private static final int DELTA_RATIO = 64;
+
+    private final Comparator<? super T> comparator;
+    private final NavigableSet<T> added;
+    private List<T> base;
+    private ArraySet<T> frozen;
+    private BitSet removed = new BitSet();
+    private int removedCount;
+    private int size;
+    private int modCount;
+
+    public MutableArraySet() {
+        this(Collections.emptyList(), null);
+    }
+
+    public MutableArraySet(Collection<? extends T> other) {
+        this(other, null);
+    }
+
+    public MutableArraySet(Collection<? extends T> other, Comparator<? super T> comp) {
+        comparator = comp;
+        added = new TreeSet<>(comp);
+        frozen = new ArraySet<>(other, comp);
+        base = new ArrayList<>(frozen);
+        size = base.size();
+    }
+
+    /**
+     * Merges pending changes and returns the current content as an immutable set.
+     */
+    public ArraySet<T> snapshot() {
+        merge();
+        if (frozen == null) {
+            frozen = new ArraySet<>(base, comparator);
+        }
+        return frozen;
+    }
+
+    private void merge() {
+        if (removedCount > 0 || !added.isEmpty()) {
+            List<T> merged = new ArrayList<>(size);
+            for (T t : this) {
+                merged.add(t);
+            }
+            base = merged;
+            frozen = null;
+            modCount++;
+            removed = new BitSet();
+            removedCount = 0;
+            added.clear();
+        }
+    }
+
+    private void mergeIfNeeded() {
+        if (removedCount + added.size() > Math.max(MIN_DELTA, base.size() / DELTA_RATIO)) {
+            merge();
+        }
+    }
+
+    /**
+     * Position of the element in the base, with the contract of
+     * {@link Collections#binarySearch(List, Object, Comparator)}.
+     */
+    private int search(T t) {
+        return Collections.binarySearch(base, t, comparator);
+    }
+
+    @Override
+    public boolean add(T t) {
+        int pos = search(t);
+        if (pos >= 0) {
+            if (!removed.get(pos)) {
+                return false;
+            }
+            removed.clear(pos);
+            removedCount--;
+        } else if (!added.add(t)) {
+            return false;
+        }
+        size++;
+        modCount++;
+        mergeIfNeeded();
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+        int pos = search((T) o);
+        if (pos >= 0) {
+            if (removed.get(pos)) {
+                return false;
+            }
+            removed.set(pos);
+            removedCount++;
+        } else if (!added.remove(o)) {
+            return false;
+        }
+        size--;
+        modCount++;
+        mergeIfNeeded();
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        base = new ArrayList<>();
+        frozen = null;
+        removed = new BitSet();
+        removedCount = 0;
+        added.clear();
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        int pos = search((T) o);
+        return pos >= 0 ? !removed.get(pos) : added.contains(o);
+    }
+
+    /**
+     * The first element of the base kept at the given position or after it
+     * ({@code up} is set), or at it or before it.
+     */
+    private T fromBase(int pos, boolean up) {
+        pos = up ? removed.nextClearBit(Math.max(pos, 0)) : removed.previousClearBit(Math.min(pos, base.size() - 1));
+        return 0 <= pos && pos < base.size() ? base.get(pos) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(T a, T b) {
+        return comparator == null ? ((Comparable<? super T>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    private T closest(T a, T b, boolean up) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return (compare(a, b) < 0) == up ? a : b;
+    }
+
+    @Override
+    public T lower(T t) {
+        int pos = search(t);
+        return closest(fromBase(pos >= 0 ? pos - 1 : -pos - 2, false), added.lower(t), false);
+    }
+
+    @Override
+    public T floor(T t) {
+        int pos = search(t);
+        return closest(fromBase(pos >= 0 ? pos : -pos - 2, false), added.floor(t), false);
+    }
+
+    @Override
+    public T ceiling(T t) {
+        int pos = search(t);
+        return closest(fromBase(pos >= 0 ? pos : -pos - 1, true), added.ceiling(t), true);
+    }
+
+    @Override
+    public T higher(T t) {
+        int pos = search(t);
+        return closest(fromBase(pos >= 0 ? pos + 1 : -pos - 1, true), added.higher(t), true);
+    }
+
+    private T lowest() {
+        return closest(fromBase(0, true), added.isEmpty() ? null : added.first(), true);
+    }
+
+    private T highest() {
+        return closest(fromBase(base.size() - 1, false), added.isEmpty() ? null : added.last(), false);
+    }
+
+    @Override
+    public T first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return lowest();
+    }
+
+    @Override
+    public T last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return highest();
+    }
+
+    @Override
+    public T pollFirst() {
+        if (isEmpty()) {
+            return null;
+        }
+        T t = first();
+        remove(t);
+        return t;
+    }
+
+    @Override
+    public T pollLast() {
+        if (isEmpty()) {
+            return null;
+        }
+        T t = last();
+        remove(t);
+        return t;
+    }
+
+    /**
+     * Merges the base and the inserted elements on the fly, skipping removed ones.
+     * Removal through the iterator leaves merging to the next update of the set.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int nextBase = removed.nextClearBit(0);
+            private T nextAdded = added.isEmpty() ? null : added.first();
+            private int lastBase = -1;
+            private T last;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return nextBase < base.size() || nextAdded != null;
+            }
+
+            @Override
+            public T next() {
+                checkModCount();
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = closest(nextBase < base.size() ? base.get(nextBase) : null, nextAdded, true);
+                if (last == nextAdded) {
+                    lastBase = -1;
+                    nextAdded = added.higher(last);
+                } else {
+                    lastBase = nextBase;
+                    nextBase = removed.nextClearBit(nextBase + 1);
+                }
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                checkModCount();
+                if (lastBase >= 0) {
+                    removed.set(lastBase);
+                    removedCount++;
+                } else {
+                    added.remove(last);
+                }
+                size--;
+                expectedModCount = ++modCount;
+                last = null;
+            }
+
+            private void checkModCount() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        };
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return new View(true, null, false, true, null, false, true);
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        if (compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return new View(false, fromElement, fromInclusive, false, toElement, toInclusive, false);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return new View(true, null, false, false, toElement, inclusive, false);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return new View(false, fromElement, inclusive, true, null, false, false);
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Range of the set in either direction, with bounds in the order of the set. Lookups are
+     * those of the set checked against the bounds; iteration steps by {@link #higher} or
+     * {@link #lower}, so it is weakly consistent and survives merges.
+     */
+    private class View extends AbstractSet<T> implements NavigableSet<T> {
+        private final boolean fromStart;
+        private final T low;
+        private final boolean lowInclusive;
+        private final boolean toEnd;
+        private final T high;
+        private final boolean highInclusive;
+        private final boolean descending;
+
+        View(boolean fromStart, T low, boolean lowInclusive, boolean toEnd, T high, boolean highInclusive,
+             boolean descending) {
+            // Rejects null and incomparable bounds, as TreeSet does
+            if (!fromStart) {
+                compare(low, low);
+            }
+            if (!toEnd) {
+                compare(high, high);
+            }
+            this.fromStart = fromStart;
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.toEnd = toEnd;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(T t) {
+            if (fromStart) {
+                return false;
+            }
+            int cmp = compare(t, low);
+            return cmp < 0 || cmp == 0 && !lowInclusive;
+        }
+
+        private boolean tooHigh(T t) {
+            if (toEnd) {
+                return false;
+            }
+            int cmp = compare(t, high);
+            return cmp > 0 || cmp == 0 && !highInclusive;
+        }
+
+        private boolean inRange(T t) {
+            return !tooLow(t) && !tooHigh(t);
+        }
+
+        /**
+         * Whether the bound of a view of this view lies within this one.
+         */
+        private boolean inRange(T t, boolean inclusive) {
+            return inclusive
+                    ? inRange(t)
+                    : (fromStart || compare(t, low) >= 0) && (toEnd || compare(t, high) <= 0);
+        }
+
+        private T absLowest() {
+            T t = fromStart ? lowest() : lowInclusive ? MutableArraySet.this.ceiling(low) : MutableArraySet.this.higher(low);
+            return t == null || tooHigh(t) ? null : t;
+        }
+
+        private T absHighest() {
+            T t = toEnd ? highest() : highInclusive ? MutableArraySet.this.floor(high) : MutableArraySet.this.lower(high);
+            return t == null || tooLow(t) ? null : t;
+        }
+
+        private T absCeiling(T t) {
+            if (tooLow(t)) {
+                return absLowest();
+            }
+            T result = MutableArraySet.this.ceiling(t);
+            return result == null || tooHigh(result) ? null : result;
+        }
+
+        private T absHigher(T t) {
+            if (tooLow(t)) {
+                return absLowest();
+            }
+            T result = MutableArraySet.this.higher(t);
+            return result == null || tooHigh(result) ? null : result;
+        }
+
+        private T absFloor(T t) {
+            if (tooHigh(t)) {
+                return absHighest();
+            }
+            T result = MutableArraySet.this.floor(t);
+            return result == null || tooLow(result) ? null : result;
+        }
+
+        private T absLower(T t) {
+            if (tooHigh(t)) {
+                return absHighest();
+            }
+            T result = MutableArraySet.this.lower(t);
+            return result == null || tooLow(result) ? null : result;
+        }
+
+        @Override
+        public boolean add(T t) {
+            if (!inRange(t)) {
+                throw new IllegalArgumentException("element out of range");
+            }
+            return MutableArraySet.this.add(t);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object o) {
+            return inRange((T) o) && MutableArraySet.this.remove(o);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object o) {
+            return inRange((T) o) && MutableArraySet.this.contains(o);
+        }
+
+        @Override
+        public T lower(T t) {
+            return descending ? absHigher(t) : absLower(t);
+        }
+
+        @Override
+        public T floor(T t) {
+            return descending ? absCeiling(t) : absFloor(t);
+        }
+
+        @Override
+        public T ceiling(T t) {
+            return descending ? absFloor(t) : absCeiling(t);
+        }
+
+        @Override
+        public T higher(T t) {
+            return descending ? absLower(t) : absHigher(t);
+        }
+
+        @Override
+        public T first() {
+            T t = descending ? absHighest() : absLowest();
+            if (t == null) {
+                throw new NoSuchElementException();
+            }
+            return t;
+        }
+
+        @Override
+        public T last() {
+            T t = descending ? absLowest() : absHighest();
+            if (t == null) {
+                throw new NoSuchElementException();
+            }
+            return t;
+        }
+
+        @Override
+        public T pollFirst() {
+            T t = descending ? absHighest() : absLowest();
+            if (t != null) {
+                MutableArraySet.this.remove(t);
+            }
+            return t;
+        }
+
+        @Override
+        public T pollLast() {
+            T t = descending ? absLowest() : absHighest();
+            if (t != null) {
+                MutableArraySet.this.remove(t);
+            }
+            return t;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private T next = descending ? absHighest() : absLowest();
+                private T last;
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public T next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = descending ? absLower(last) : absHigher(last);
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    MutableArraySet.this.remove(last);
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return absLowest() == null;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Iterator<T> it = iterator(); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public NavigableSet<T> descendingSet() {
+            return new View(fromStart, low, lowInclusive, toEnd, high, highInclusive, !descending);
+        }
+
+        @Override
+        public Iterator<T> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+            int cmp = compare(fromElement, toElement);
+            if (descending ? cmp < 0 : cmp > 0) {
+                throw new IllegalArgumentException("fromElement > toElement");
+            }
+            return descending
+                    ? range(false, toElement, toInclusive, false, fromElement, fromInclusive)
+                    : range(false, fromElement, fromInclusive, false, toElement, toInclusive);
+        }
+
+        @Override
+        public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+            return descending
+                    ? range(false, toElement, inclusive, toEnd, high, highInclusive)
+                    : range(fromStart, low, lowInclusive, false, toElement, inclusive);
+        }
+
+        @Override
+        public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+            return descending
+                    ? range(fromStart, low, lowInclusive, false, fromElement, inclusive)
+                    : range(false, fromElement, inclusive, toEnd, high, highInclusive);
+        }
+
+        private View range(boolean fromStart, T low, boolean lowInclusive, boolean toEnd, T high, boolean highInclusive) {
+            if (!fromStart && !inRange(low, lowInclusive) || !toEnd && !inRange(high, highInclusive)) {
+                throw new IllegalArgumentException("bound out of range");
+            }
+            return new View(fromStart, low, lowInclusive, toEnd, high, highInclusive, descending);
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return descending ? Collections.reverseOrder(comparator) : comparator;
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
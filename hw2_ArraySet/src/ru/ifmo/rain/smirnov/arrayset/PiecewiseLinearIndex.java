@@ -0,0 +1,121 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Piecewise linear model of the position of a key in a sorted list, fitted so that every
+ * stored key is predicted within a few positions of its own. A lookup finds its segment
+ * among the few segment heads and then needs to search only a window around the prediction.
+ * <p>
+ * Segments are fitted greedily in one pass: the slopes that keep all points of the current
+ * segment within the error form a cone that narrows with every point, and a point outside of
+ * it starts a new segment.
+ */
+class PiecewiseLinearIndex<T> {
+    private final static int ERROR = 16;
+    /**
+     * Distance from a prediction to the position of the key, covering the rounding of the prediction.
+     */
+    final static int WINDOW = ERROR + 1;
+
+    private final ToLongFunction<? super T> projection;
+    private final long[] heads;
+    private final int[] starts;
+    private final double[] slopes;
+    private final int size;
+
+    /**
+     * @param keys keys of the list, non-decreasing
+     */
+    PiecewiseLinearIndex(long[] keys, ToLongFunction<? super T> projection) {
+        this.projection = projection;
+        size = keys.length;
+        long[] heads = new long[1];
+        int[] starts = new int[1];
+        double[] slopes = new double[1];
+        int segments = 0;
+        double low = 0;
+        double high = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < keys.length; i++) {
+            if (segments > 0) {
+                int start = starts[segments - 1];
+                double dx = distance(heads[segments - 1], keys[i]);
+                if (dx == 0) {
+                    // A repeated head is predicted at the start whatever the slope
+                    if (i - start <= ERROR) {
+                        continue;
+                    }
+                } else {
+                    double lowest = Math.max(low, (i - ERROR - start) / dx);
+                    double highest = Math.min(high, (i + ERROR - start) / dx);
+                    if (lowest <= highest) {
+                        low = lowest;
+                        high = highest;
+                        continue;
+                    }
+                }
+                slopes[segments - 1] = slope(low, high);
+            }
+            if (segments == heads.length) {
+                heads = Arrays.copyOf(heads, 2 * segments);
+                starts = Arrays.copyOf(starts, 2 * segments);
+                slopes = Arrays.copyOf(slopes, 2 * segments);
+            }
+            heads[segments] = keys[i];
+            starts[segments] = i;
+            segments++;
+            low = 0;
+            high = Double.POSITIVE_INFINITY;
+        }
+        if (segments > 0) {
+            slopes[segments - 1] = slope(low, high);
+        }
+        this.heads = Arrays.copyOf(heads, segments);
+        this.starts = Arrays.copyOf(starts, segments);
+        this.slopes = Arrays.copyOf(slopes, segments);
+    }
+
+    static <T> PiecewiseLinearIndex<T> of(List<T> sorted, ToLongFunction<? super T> projection) {
+        return new PiecewiseLinearIndex<>(sorted.stream().mapToLong(projection).toArray(), projection);
+    }
+
+    private static double slope(double low, double high) {
+        return high == Double.POSITIVE_INFINITY ? low : (low + high) / 2;
+    }
+
+    /**
+     * Unsigned {@code to - from}, which may exceed {@code Long.MAX_VALUE}.
+     */
+    private static double distance(long from, long to) {
+        long d = to - from;
+        return d >= 0 ? d : (d >>> 1) * 2.0;
+    }
+
+    int predict(T key) {
+        return predict(projection.applyAsLong(key));
+    }
+
+    /**
+     * Predicted position of the key, clamped to the positions its segment covers.
+     */
+    int predict(long key) {
+        int segment = Arrays.binarySearch(heads, key);
+        if (segment < 0) {
+            segment = -segment - 2;
+            if (segment < 0) {
+                return 0;
+            }
+        } else {
+            // Equal heads come from repeated keys, of which the first one counts
+            while (segment > 0 && heads[segment - 1] == key) {
+                segment--;
+            }
+        }
+        int start = starts[segment];
+        int end = segment + 1 < starts.length ? starts[segment + 1] : size;
+        double position = start + slopes[segment] * distance(heads[segment], key);
+        return (int) Math.min(position, end);
+    }
+}
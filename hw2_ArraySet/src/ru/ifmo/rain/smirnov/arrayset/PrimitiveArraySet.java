@@ -0,0 +1,226 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Position and view logic shared by the sets of primitive keys. A set is the range
+ * {@code [from, to)} of a sorted array, iterated backwards when descending; subclasses own
+ * the array and search it for primitive keys, this class turns search results into positions.
+ *
+ * @param <T> boxed key type
+ * @param <S> type of the views
+ */
+abstract class PrimitiveArraySet<T extends Comparable<? super T>, S extends PrimitiveArraySet<T, S>>
+        extends AbstractSet<T> implements NavigableSet<T> {
+    final int from;
+    final int to;
+    final boolean descending;
+    final Comparator<? super T> order;
+    private final Comparator<? super T> comparator;
+
+    PrimitiveArraySet(int from, int to, boolean descending, Comparator<? super T> order) {
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+        this.order = order;
+        comparator = descending ? Collections.reverseOrder(order) : order;
+    }
+
+    static boolean isNatural(Comparator<?> comp) {
+        return comp == null || comp == Comparator.naturalOrder();
+    }
+
+    /**
+     * Result of {@link Arrays#binarySearch} within {@code [from, to)} for the boxed key.
+     */
+    abstract int search(T key);
+
+    abstract T getItem(int pos);
+
+    /**
+     * Set over the same array with the given bounds and direction.
+     */
+    abstract S view(int from, int to, boolean descending);
+
+    /**
+     * Binary search within {@code [from, to)} for comparators other than the natural order.
+     *
+     * @param compareAt compares the key at a position with the one searched for
+     */
+    int search(IntUnaryOperator compareAt) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareAt.applyAsInt(mid);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int getItemIndex(int pos, int wasFound, int wasNotFound) {
+        if (pos < 0) {
+            pos = -pos - 1;
+            return pos + wasNotFound;
+        }
+        return pos + wasFound;
+    }
+
+    int lowerPos(int pos) {
+        return descending ? getItemIndex(pos, 1, 0) : getItemIndex(pos, -1, -1);
+    }
+
+    int floorPos(int pos) {
+        return descending ? getItemIndex(pos, 0, 0) : getItemIndex(pos, 0, -1);
+    }
+
+    int ceilingPos(int pos) {
+        return descending ? getItemIndex(pos, 0, -1) : getItemIndex(pos, 0, 0);
+    }
+
+    int higherPos(int pos) {
+        return descending ? getItemIndex(pos, -1, -1) : getItemIndex(pos, 1, 0);
+    }
+
+    private boolean isCorrectPos(int pos) {
+        return from <= pos && pos < to;
+    }
+
+    /**
+     * Index in this set's iteration order of the array position, or {@code -1}.
+     */
+    int toIndex(int pos) {
+        if (!isCorrectPos(pos)) {
+            return -1;
+        }
+        return descending ? to - 1 - pos : pos - from;
+    }
+
+    /**
+     * Array position of the index in this set's iteration order.
+     */
+    int toPos(int index) {
+        Objects.checkIndex(index, size());
+        return descending ? to - 1 - index : from + index;
+    }
+
+    private T getItemOrNull(int pos) {
+        return isCorrectPos(pos) ? getItem(pos) : null;
+    }
+
+    private int compare(T a, T b) {
+        return isNatural(order) ? a.compareTo(b) : order.compare(a, b);
+    }
+
+    @Override
+    public T lower(T t) {
+        return getItemOrNull(lowerPos(search(t)));
+    }
+
+    @Override
+    public T floor(T t) {
+        return getItemOrNull(floorPos(search(t)));
+    }
+
+    @Override
+    public T ceiling(T t) {
+        return getItemOrNull(ceilingPos(search(t)));
+    }
+
+    @Override
+    public T higher(T t) {
+        return getItemOrNull(higherPos(search(t)));
+    }
+
+    @Override
+    public T pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public S descendingSet() {
+        return view(from, to, !descending);
+    }
+
+    private S range(int low, int high) {
+        low = Math.max(low, from);
+        high = Math.min(high, to);
+        return view(low, Math.max(low, high), descending);
+    }
+
+    @Override
+    public S subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        int cmp = compare(fromElement, toElement);
+        if (descending ? cmp < 0 : cmp > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return headSet(toElement, toInclusive).tailSet(fromElement, fromInclusive);
+    }
+
+    @Override
+    public S headSet(T toElement, boolean inclusive) {
+        int found = search(toElement);
+        int pos = inclusive ? floorPos(found) : lowerPos(found);
+        return descending ? range(pos, to) : range(from, pos + 1);
+    }
+
+    @Override
+    public S tailSet(T fromElement, boolean inclusive) {
+        int found = search(fromElement);
+        int pos = inclusive ? ceilingPos(found) : higherPos(found);
+        return descending ? range(from, pos + 1) : range(pos, to);
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public T first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getItem(toPos(0));
+    }
+
+    @Override
+    public T last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getItem(toPos(size() - 1));
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+}
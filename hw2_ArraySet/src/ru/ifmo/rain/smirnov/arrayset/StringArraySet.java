@@ -0,0 +1,271 @@
+package ru.ifmo.rain.smirnov.arrayset;
+
+import java.util.*;
+
+/**
+ * {@link ArraySet} of strings in their natural order, kept front coded in a single byte array
+ * ({@link FrontCodedStrings}) instead of as separate {@code String} objects. Lookups search the
+ * heads of blocks of {@value FrontCodedStrings#BLOCK} strings and scan one block; elements are
+ * decoded on access. Views share the encoded strings and differ only in bounds and direction.
+ */
+public class StringArraySet extends AbstractSet<String> implements NavigableSet<String> {
+    private final FrontCodedStrings data;
+    private final int from;
+    private final int to;
+    private final boolean descending;
+
+    public StringArraySet() {
+        this(Collections.emptyList());
+    }
+
+    public StringArraySet(Collection<? extends String> other) {
+        this(new FrontCodedStrings(sort(other.toArray(new String[0]))));
+    }
+
+    private StringArraySet(FrontCodedStrings data) {
+        this(data, 0, data.size(), false);
+    }
+
+    private StringArraySet(FrontCodedStrings data, int from, int to, boolean descending) {
+        this.data = data;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    /**
+     * Sorts strings in place and drops repeated ones.
+     */
+    private static String[] sort(String[] strings) {
+        for (String s : strings) {
+            Objects.requireNonNull(s);
+        }
+        int sorted = 1;
+        while (sorted < strings.length && strings[sorted - 1].compareTo(strings[sorted]) <= 0) {
+            sorted++;
+        }
+        if (sorted < strings.length) {
+            Arrays.sort(strings);
+        }
+        int size = 0;
+        for (String s : strings) {
+            if (size == 0 || !strings[size - 1].equals(s)) {
+                strings[size++] = s;
+            }
+        }
+        return size == strings.length ? strings : Arrays.copyOf(strings, size);
+    }
+
+    /**
+     * Binary search in {@code data[from, to)}, with the contract of
+     * {@link Arrays#binarySearch(Object[], Object)} over positions of {@code data}.
+     */
+    private int search(byte[] key) {
+        int pos = data.search(key);
+        int insertion = pos >= 0 ? pos : -pos - 1;
+        if (insertion < from) {
+            return -from - 1;
+        }
+        if (insertion >= to) {
+            return -to - 1;
+        }
+        return pos;
+    }
+
+    private int getItemIndex(String key, int wasFound, int wasNotFound) {
+        int pos = search(FrontCodedStrings.encode(key));
+        if (pos < 0) {
+            pos = -pos - 1;
+            return pos + wasNotFound;
+        }
+        return pos + wasFound;
+    }
+
+    private int lowerPos(String key) {
+        return descending ? getItemIndex(key, 1, 0) : getItemIndex(key, -1, -1);
+    }
+
+    private int floorPos(String key) {
+        return descending ? getItemIndex(key, 0, 0) : getItemIndex(key, 0, -1);
+    }
+
+    private int ceilingPos(String key) {
+        return descending ? getItemIndex(key, 0, -1) : getItemIndex(key, 0, 0);
+    }
+
+    private int higherPos(String key) {
+        return descending ? getItemIndex(key, -1, -1) : getItemIndex(key, 1, 0);
+    }
+
+    private boolean isCorrectPos(int pos) {
+        return from <= pos && pos < to;
+    }
+
+    private String getItem(int pos) {
+        return isCorrectPos(pos) ? data.get(pos) : null;
+    }
+
+    private int toPos(int index) {
+        return descending ? to - 1 - index : from + index;
+    }
+
+    /**
+     * Returns the strings starting with the given prefix, in the order of this set.
+     * The view is found by two lookups and takes no copying.
+     */
+    public StringArraySet prefixSet(String prefix) {
+        byte[] low = FrontCodedStrings.encode(prefix);
+        if (low.length == 0) {
+            return view(from, to);
+        }
+        int lowPos = search(low);
+        // Encoded strings have no 0xff bytes, so this is the least key above all the prefixed ones
+        byte[] high = low.clone();
+        high[high.length - 1]++;
+        int highPos = search(high);
+        return view(lowPos >= 0 ? lowPos : -lowPos - 1, highPos >= 0 ? highPos : -highPos - 1);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && search(FrontCodedStrings.encode((String) o)) >= 0;
+    }
+
+    @Override
+    public String lower(String t) {
+        return getItem(lowerPos(t));
+    }
+
+    @Override
+    public String floor(String t) {
+        return getItem(floorPos(t));
+    }
+
+    @Override
+    public String ceiling(String t) {
+        return getItem(ceilingPos(t));
+    }
+
+    @Override
+    public String higher(String t) {
+        return getItem(higherPos(t));
+    }
+
+    @Override
+    public String pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Decodes a block at a time, so every element is decoded once.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int index;
+            private int block = -1;
+            private String[] strings;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int pos = toPos(index++);
+                if (pos / FrontCodedStrings.BLOCK != block) {
+                    block = pos / FrontCodedStrings.BLOCK;
+                    strings = data.block(block);
+                }
+                return strings[pos % FrontCodedStrings.BLOCK];
+            }
+        };
+    }
+
+    @Override
+    public StringArraySet descendingSet() {
+        return new StringArraySet(data, from, to, !descending);
+    }
+
+    @Override
+    public Iterator<String> descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    private StringArraySet view(int low, int high) {
+        low = Math.max(low, from);
+        high = Math.min(high, to);
+        return new StringArraySet(data, low, Math.max(low, high), descending);
+    }
+
+    @Override
+    public StringArraySet subSet(String fromElement, boolean fromInclusive, String toElement, boolean toInclusive) {
+        int cmp = fromElement.compareTo(toElement);
+        if (descending ? cmp < 0 : cmp > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return headSet(toElement, toInclusive).tailSet(fromElement, fromInclusive);
+    }
+
+    @Override
+    public StringArraySet headSet(String toElement, boolean inclusive) {
+        int pos = inclusive ? floorPos(toElement) : lowerPos(toElement);
+        return descending ? view(pos, to) : view(from, pos + 1);
+    }
+
+    @Override
+    public StringArraySet tailSet(String fromElement, boolean inclusive) {
+        int pos = inclusive ? ceilingPos(fromElement) : higherPos(fromElement);
+        return descending ? view(from, pos + 1) : view(pos, to);
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+        return descending ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public SortedSet<String> subSet(String fromElement, String toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<String> headSet(String toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<String> tailSet(String fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public String first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return data.get(toPos(0));
+    }
+
+    @Override
+    public String last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return data.get(toPos(size() - 1));
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+}